@@ -0,0 +1,230 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import gnu.trove.iterator.TLongIterator;
+import java.nio.DoubleBuffer;
+
+/**
+ * Base implementation of the cost functions that store the whole hypercube of
+ * values in chunks of buffers, addressed by long indices. Therefore, these
+ * functions can hold more than {@link HypercubeCostFunction#MAX_SIZE}
+ * elements.
+ *
+ * The concrete classes decide where the chunks are allocated.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public abstract class AbstractChunkedCostFunction extends AbstractCostFunction {
+
+    /**
+     * Default number of bits of the chunk index (chunks of 1GiB).
+     */
+    protected static final int DEFAULT_CHUNK_BITS = 27;
+
+    /**
+     * Number of bits of the index used to address an element within a chunk.
+     */
+    private final int chunkBits;
+
+    /**
+     * Mask that extracts the position within a chunk from an index.
+     */
+    private final long chunkMask;
+
+    /**
+     * Hypercube values storage chunks.
+     */
+    protected DoubleBuffer[] chunks;
+
+    /**
+     * Creates a new CostFunction, using chunks of <code>2^chunkBits</code>
+     * elements. Concrete classes must {@link #allocate()} the chunks.
+     *
+     * @param variables involved in this factor.
+     * @param chunkBits number of bits used to address the elements of a chunk.
+     */
+    protected AbstractChunkedCostFunction(Variable[] variables, int chunkBits) {
+        super(variables);
+        this.chunkBits = chunkBits;
+        chunkMask = (1L << chunkBits) - 1;
+    }
+
+    /**
+     * Constructs a new factor with the same variables as the given one, using
+     * chunks of <code>2^chunkBits</code> elements. Concrete classes must
+     * {@link #allocate()} the chunks and {@link #copyValues(CostFunction)}.
+     *
+     * @param factor factor to copy.
+     * @param chunkBits number of bits used to address the elements of a chunk.
+     */
+    protected AbstractChunkedCostFunction(CostFunction factor, int chunkBits) {
+        super(factor);
+        this.chunkBits = chunkBits;
+        chunkMask = (1L << chunkBits) - 1;
+    }
+
+    /**
+     * Get the number of bits used to address the elements of a chunk of the
+     * given function, so that copies can keep the same layout.
+     *
+     * @param factor function to check.
+     * @return number of bits used to address the elements of a chunk.
+     */
+    protected static int getChunkBits(CostFunction factor) {
+        if (factor instanceof AbstractChunkedCostFunction) {
+            return ((AbstractChunkedCostFunction)factor).chunkBits;
+        }
+        return DEFAULT_CHUNK_BITS;
+    }
+
+    /**
+     * Allocates the chunks required to hold this function.
+     */
+    protected void allocate() {
+        if (size < 0) {
+            throw new UnsupportedOperationException("Cost functions can not hold "
+                    + "more than " + Long.MAX_VALUE + " elements.");
+        }
+
+        final long chunkSize = 1L << chunkBits;
+        final int nchunks = (int)((size + chunkSize - 1) >>> chunkBits);
+        chunks = new DoubleBuffer[nchunks];
+        for (int i=0; i<nchunks; i++) {
+            final long offset = i*chunkSize;
+            chunks[i] = allocateChunk(offset, (int)Math.min(chunkSize, size - offset));
+        }
+    }
+
+    /**
+     * Allocates a chunk of this function, initialized to zeros.
+     *
+     * @param offset index of the first element of the chunk.
+     * @param length number of elements of the chunk.
+     * @return buffer holding the chunk.
+     */
+    protected abstract DoubleBuffer allocateChunk(long offset, int length);
+
+    /**
+     * Copies all the values of the given function into this one.
+     *
+     * @param factor function to copy.
+     */
+    protected void copyValues(CostFunction factor) {
+        if (factor instanceof AbstractChunkedCostFunction
+                && ((AbstractChunkedCostFunction)factor).chunkBits == chunkBits)
+        {
+            final AbstractChunkedCostFunction other = (AbstractChunkedCostFunction)factor;
+            for (int i=0; i<chunks.length; i++) {
+                DoubleBuffer src = other.chunks[i].duplicate();
+                src.clear();
+                DoubleBuffer dst = chunks[i].duplicate();
+                dst.clear();
+                dst.put(src);
+            }
+            return;
+        }
+
+        for (long i=0; i<size; i++) {
+            setValue(i, factor.getValue(i));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        if (size > HypercubeCostFunction.MAX_SIZE) {
+            throw new UnsupportedOperationException("Unable to expand a cost function"
+                    + " of more than " + HypercubeCostFunction.MAX_SIZE + " elements.");
+        }
+
+        double[] result = new double[(int)size];
+        int offset = 0;
+        for (DoubleBuffer chunk : chunks) {
+            DoubleBuffer src = chunk.duplicate();
+            src.clear();
+            final int len = src.remaining();
+            src.get(result, offset, len);
+            offset += len;
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        int offset = 0;
+        for (DoubleBuffer chunk : chunks) {
+            DoubleBuffer dst = chunk.duplicate();
+            dst.clear();
+            final int len = dst.remaining();
+            dst.put(values, offset, len);
+            offset += len;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        return chunks[(int)(index >>> chunkBits)].get((int)(index & chunkMask));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        chunks[(int)(index >>> chunkBits)].put((int)(index & chunkMask), value);
+    }
+
+}
@@ -52,8 +52,10 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Base implementation of a cost function.
@@ -137,6 +139,11 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
         return factory;
     }
 
+    @Override
+    public void release() {
+        // Values held in memory are released by the garbage collector
+    }
+
     /**
      * Computes the function's size and dimensionalities.
      * @see #size
@@ -172,41 +179,88 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
             return mapping;
         }
 
-        long i = getOptimalConfiguration();
+        long i = getOptimalConfigurationIndex(factory.getRandom());
         mapping.putAll(getMapping(i, null));
         return mapping;
     }
 
+    @Override
+    public long getOptimalIndex(Random random) {
+        if (variables.length == 0) {
+            return size == 0 ? -1 : 0;
+        }
+        return getOptimalConfigurationIndex(random == null ? factory.getRandom() : random);
+    }
+
+    @Override
+    public int[] getOptimalValues(int[] values, Random random) {
+        final int len = variables.length;
+        if (values == null) {
+            values = new int[len];
+        }
+        if (len == 0) {
+            return values;
+        }
+
+        final long idx = getOptimalIndex(random);
+        for (int i=0; i<len; i++) {
+            values[i] = (int)(idx / sizes[len - i - 1] % variables[i].getDomain());
+        }
+        return values;
+    }
+
     /**
      * Get the index of the optimal configuration.
      * <p/>
-     * A random one is returned when there are multiple optimal configurations.
+     * A random one is returned when there are multiple optimal configurations,
+     * chosen by reservoir sampling.
      *
+     * @param random random number generator used to break ties.
      * @return index of the optimal configuration of this function.
      */
-    protected long getOptimalConfiguration() {
+    protected long getOptimalConfigurationIndex(Random random) {
         // Find the maximal value
         Summarize operation = factory.getSummarizeOperation();
-        ArrayList<Long> idx = new ArrayList<Long>();
         double optimal = operation.getNoGood();
-        TLongIterator it = iterator();
-        while(it.hasNext()) {
-            final long i = it.next();
-            final double value = getValue(i);
-            if (operation.isBetter(value, optimal)) {
-                optimal = value;
-                idx.clear();
-                idx.add(i);
-            } else if (value == optimal) {
-                idx.add(i);
+        long best = -1;
+        int ties = 0;
+        if (this instanceof HypercubeCostFunction) {
+            // Skip nogoods, as the iterator does
+            final double ng = operation.getNoGood();
+            final double[] values = getValues();
+            for (int i=0; i<values.length; i++) {
+                final double value = values[i];
+                if (value == ng) {
+                    continue;
+                }
+                if (operation.isBetter(value, optimal)) {
+                    optimal = value;
+                    best = i;
+                    ties = 1;
+                } else if (value == optimal && random.nextInt(++ties) == 0) {
+                    best = i;
+                }
+            }
+        } else {
+            TLongIterator it = iterator();
+            while(it.hasNext()) {
+                final long i = it.next();
+                final double value = getValue(i);
+                if (operation.isBetter(value, optimal)) {
+                    optimal = value;
+                    best = i;
+                    ties = 1;
+                } else if (value == optimal && random.nextInt(++ties) == 0) {
+                    best = i;
+                }
             }
         }
 
-        if (idx.isEmpty()) {
+        if (best == -1) {
             throw new RuntimeException("Unable to optimize this factor");
         }
 
-        return idx.get(new Random().nextInt(idx.size()));
+        return best;
     }
 
     /**
@@ -447,6 +501,15 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
     public CostFunction negate() {
         Combine operation = factory.getCombineOperation();
         CostFunction result = factory.buildCostFunction(this);
+        if (this instanceof HypercubeCostFunction && result instanceof HypercubeCostFunction) {
+            final double[] out = result.getValues();
+            Kernels.negate(operation, factory.getSummarizeOperation().getNoGood(), getValues(), out);
+            if (Kernels.hasNaN(out, 0, out.length)) {
+                throw new RuntimeException("Negation generated a NaN value. Halting.");
+            }
+            return result;
+        }
+
         TLongIterator it = iterator();
         while(it.hasNext()) {
             final long i = it.next();
@@ -486,30 +549,27 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
         varSet.addAll(factor.getVariableSet());
         Variable[] vars = varSet.toArray(new Variable[0]);
 
+        // Sparse operands allow to skip all the nogood combinations
+        CostFunction driver = getSparseDriver(Arrays.<CostFunction>asList(this, factor), vars);
+        if (driver != null) {
+            return _sparseCombine(Arrays.<CostFunction>asList(this, factor), driver, vars);
+        }
+
         final Combine operation = factory.getCombineOperation();
         CostFunction result = factory.buildCostFunction(vars, operation.getNeutralValue());
-        _combine(this, factor, result);
-        return result;
+        _combine(factor, result);
+        return factory.adaptResult(result);
     }
 
-    private void _combine(CostFunction f1, CostFunction f2,
-            CostFunction result)
-    {
-        final Combine operation = factory.getCombineOperation();
-        MasterIterator       it = result.masterIterator();
-        ConditionedIterator  i1 = f1.conditionedIterator(result);
-        ConditionedIterator  i2 = f2.conditionedIterator(result);
-        final int[] subidx      = it.getIndices();
-        while (it.hasNext()) {
-            final long i = it.next();
-            final double v1 = f1.getValue(i1.nextSubidxs(subidx));
-            final double v2 = f2.getValue(i2.nextSubidxs(subidx));
-            final double v = operation.eval(v1, v2);
-            if (Double.isNaN(v)) {
-                throw new RuntimeException("Combination generated a NaN value (" + v1 + "," + v2 + "). Halting.");
-            }
-            result.setValue(i, v);
-        }
+    /**
+     * Fills all the positions of the given result with the combination of
+     * this function and the given one.
+     *
+     * @param f2 function to combine with.
+     * @param result function where to store the combination.
+     */
+    protected void _combine(CostFunction f2, CostFunction result) {
+        _combine(new CostFunction[]{this, f2}, result);
     }
 
     @Override
@@ -519,6 +579,26 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
 
     @Override
     public CostFunction combine(Collection<CostFunction> functions) {
+        return combine(functions, false);
+    }
+
+    @Override
+    public CostFunction combineAndNormalize(Collection<CostFunction> functions) {
+        if (factory.getNormalizationType() == Normalize.NONE) {
+            return combine(functions, false);
+        }
+        return combine(functions, true);
+    }
+
+    /**
+     * Combines this function with the given ones, normalizing the result in
+     * place if requested.
+     *
+     * When the combination is performed by the hypercube run kernels, the sum
+     * needed to normalize is accumulated while producing each run, so the
+     * result is only traversed once more to scale it.
+     */
+    private CostFunction combine(Collection<CostFunction> functions, boolean normalize) {
         List<CostFunction> fs = new ArrayList<>(functions);
 
         // Remove null functions
@@ -530,9 +610,11 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
 
         // If lit's a single (or none) function, just fallback to normal combine.
         if (fs.isEmpty()) {
-            return factory.buildCostFunction(this);
+            CostFunction result = factory.buildCostFunction(this);
+            return normalize ? normalizeInPlace(result, Double.NaN) : result;
         } else if (fs.size() == 1) {
-            return combine(fs.get(0));
+            CostFunction result = combine(fs.get(0));
+            return normalize ? normalizeInPlace(result, Double.NaN) : result;
         }
 
         // Compute the variable set intersection (sets doesn't allow duplicates)
@@ -541,32 +623,514 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
             varSet.addAll(f.getVariableSet());
         }
         Variable[] vars = varSet.toArray(new Variable[0]);
+        fs.add(this);
+
+        // Sparse operands allow to skip all the nogood combinations
+        CostFunction driver = getSparseDriver(fs, vars);
+        if (driver != null) {
+            CostFunction result = _sparseCombine(fs, driver, vars);
+            return normalize ? normalizeInPlace(result, Double.NaN) : result;
+        }
 
         // Iterate over the result positions, fetching the values from ourselves
         // and all the other factors.
         final Combine operation = factory.getCombineOperation();
         CostFunction result = factory.buildCostFunction(vars, operation.getNeutralValue());
+        if (normalize && this instanceof HypercubeCostFunction) {
+            final double sum = _combine(fs.toArray(new CostFunction[0]), result, true);
+            result = normalizeInPlace(result, sum);
+        } else {
+            _combine(fs.toArray(new CostFunction[0]), result);
+            if (normalize) {
+                result = normalizeInPlace(result, Double.NaN);
+            }
+        }
+
+        return factory.adaptResult(result);
+    }
+
+    /**
+     * Normalizes the given (freshly built) function in place, if it is a
+     * hypercube.
+     *
+     * @param f function to normalize.
+     * @param sum sum of the function's non-nogood values, or NaN if unknown.
+     * @return normalized function.
+     */
+    private CostFunction normalizeInPlace(CostFunction f, double sum) {
+        if (!(f instanceof HypercubeCostFunction)) {
+            CostFunction result = f.normalize();
+            f.release();
+            return result;
+        }
+        ((AbstractCostFunction<?>)f).normalizeInto(f, sum);
+        return f;
+    }
+
+    /**
+     * Chooses the function that should drive a combination, when it can be
+     * driven by the non-nogood elements of a sparse operand.
+     *
+     * This is only possible when the nogood value absorbs any other value
+     * under the current combine operation, because then the result is a
+     * nogood everywhere the driver is.
+     *
+     * @param fs functions to combine.
+     * @param vars variables of the combination result.
+     * @return the sparse function with the least expected work, or
+     *         <code>null</code> if the combination should be performed densely.
+     */
+    private CostFunction getSparseDriver(List<CostFunction> fs, Variable[] vars) {
+        if (!factory.isNoGoodAbsorbing()) {
+            return null;
+        }
+
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final long resultSize = sizeOf(vars);
+        if (resultSize < 0) {
+            return null;
+        }
+
+        CostFunction driver = null;
+        double best = resultSize;
+        for (CostFunction f : fs) {
+            if (!(f instanceof SparseCostFunction)) {
+                continue;
+            }
+            final SparseCostFunction sf = (SparseCostFunction)f;
+            if (sf.getDefaultValue() != ng) {
+                continue;
+            }
+
+            // Each stored element expands to the positions of the variables
+            // that the driver does not have.
+            final double work = sf.getStoredSize() * ((double)resultSize / sf.getSize());
+            if (work < best) {
+                best = work;
+                driver = f;
+            }
+        }
+        return driver;
+    }
+
+    /**
+     * Combines the given functions by walking the non-nogood elements of the
+     * driver function only.
+     *
+     * @param fs functions to combine (including the driver).
+     * @param driver function whose elements drive the combination.
+     * @param vars variables of the combination result.
+     * @return combination result.
+     */
+    private CostFunction _sparseCombine(List<CostFunction> fs, CostFunction driver,
+            Variable[] vars)
+    {
+        final Combine operation = factory.getCombineOperation();
+        final double ng = factory.getSummarizeOperation().getNoGood();
+
+        // Assume the nogoods of all operands to be independent
+        double density = 1;
+        for (CostFunction f : fs) {
+            density *= factory.getDensity(f);
+        }
+        CostFunction result = factory.buildCostFunction(vars, ng, density);
+
+        final int nothers = fs.size() - 1;
+        CostFunction[] others = new CostFunction[nothers];
+        ConditionedIterator[] iterators = new ConditionedIterator[nothers];
+        int j = 0;
+        for (CostFunction f : fs) {
+            if (f != driver) {
+                others[j] = f;
+                iterators[j++] = f.conditionedIterator(result);
+            }
+        }
+
+        MasterIterator it = driver.masterIterator();
+        final int[] subidx = it.getIndices();
+        ConditionedIterator rit = result.conditionedIterator(driver);
+        while (it.hasNext()) {
+            final double dv = driver.getValue(it.next());
+            if (dv == ng) {
+                continue;
+            }
+
+            rit.nextSubidxs(subidx);
+            while (rit.hasNextOffset()) {
+                final long idx = rit.nextOffset();
+                double v = dv;
+                for (int i=0; i<nothers && v != ng; i++) {
+                    v = operation.eval(v, others[i].getValue(iterators[i].next(idx)));
+                }
+
+                if (Double.isNaN(v)) {
+                    throw new RuntimeException("Combination generated a NaN value. Halting.");
+                }
+
+                if (v != ng) {
+                    result.setValue(idx, v);
+                }
+            }
+        }
+
+        return factory.adaptResult(result);
+    }
+
+    /**
+     * Computes the size of the hypercube formed by the given variables.
+     *
+     * @param vars variables of the hypercube.
+     * @return size of the hypercube, or -1 if it overflows.
+     */
+    private static long sizeOf(Variable[] vars) {
+        long size = 1;
+        for (Variable v : vars) {
+            size *= v.getDomain();
+            if (size < 0) {
+                return -1;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public CostFunction combineAndSummarize(Collection<CostFunction> functions, Variable[] vars) {
+        List<CostFunction> fs = new ArrayList<>();
         fs.add(this);
-        _combine(fs, result, operation);
+        for (CostFunction f : functions) {
+            if (f != null) {
+                fs.add(f);
+            }
+        }
 
-        return result;
+        // Compute the variable set intersection (sets doesn't allow duplicates)
+        LinkedHashSet<Variable> varSet = new LinkedHashSet<Variable>(variableSet);
+        for (CostFunction f : fs) {
+            varSet.addAll(f.getVariableSet());
+        }
+        final Variable[] jvars = varSet.toArray(new Variable[0]);
+
+        // Eliminate variables one at a time when it is cheaper
+        if (fs.size() > 2) {
+            ContractionPlan plan = new ContractionPlan(factory, fs, vars);
+            if (plan.isWorthwhile()) {
+                return plan.execute();
+            }
+        }
+
+        // Fall back to building the combination when it can not be streamed
+        boolean streamable = varSet.containsAll(Arrays.asList(vars)) && sizeOf(jvars) >= 0
+                && getSparseDriver(fs, jvars) == null;
+        for (int k=0; streamable && k<fs.size(); k++) {
+            streamable = fs.get(k) instanceof AbstractCostFunction;
+        }
+        if (!streamable) {
+            CostFunction combination = combine(functions);
+            CostFunction result = combination.summarize(vars);
+            combination.release();
+            return result;
+        }
+
+        final Combine combine = factory.getCombineOperation();
+        final Summarize summarize = factory.getSummarizeOperation();
+        final int n = fs.size();
+        final int len = jvars.length;
+        final long[][] strides = new long[n + 1][];
+        final long[][] rewinds = new long[n + 1][len];
+        final double[][] arrays = new double[n][];
+        for (int k=0; k<n; k++) {
+            strides[k] = ((AbstractCostFunction<?>)fs.get(k)).getStrides(jvars);
+            if (fs.get(k) instanceof HypercubeCostFunction) {
+                arrays[k] = fs.get(k).getValues();
+            }
+        }
+
+        // The result is handled as an additional operand, with zero strides
+        // for the summarized variables
+        CostFunction result = factory.buildCostFunction(vars, summarize.getNoGood());
+        strides[n] = new long[len];
+        for (int j=0; j<len; j++) {
+            long stride = 1;
+            for (int i=vars.length-1; i>=0 && !vars[i].equals(jvars[j]); i--) {
+                stride *= vars[i].getDomain();
+            }
+            strides[n][j] = Arrays.asList(vars).contains(jvars[j]) ? stride : 0;
+        }
+        for (int k=0; k<=n; k++) {
+            for (int j=0; j<len; j++) {
+                rewinds[k][j] = strides[k][j] * (jvars[j].getDomain() - 1);
+            }
+        }
+        final double[] out = result instanceof HypercubeCostFunction ? result.getValues() : null;
+
+        final int[] subidx = new int[len];
+        final long[] offsets = new long[n + 1];
+        for (long i=0, size=sizeOf(jvars); i<size; i++) {
+            double v = arrays[0] != null ? arrays[0][(int)offsets[0]] : fs.get(0).getValue(offsets[0]);
+            for (int k=1; k<n; k++) {
+                final double v2 = arrays[k] != null ? arrays[k][(int)offsets[k]] : fs.get(k).getValue(offsets[k]);
+                v = combine.eval(v, v2);
+            }
+
+            if (Double.isNaN(v)) {
+                throw new RuntimeException("Combination generated a NaN value. Halting.");
+            }
+
+            final long r = offsets[n];
+            if (out != null) {
+                out[(int)r] = summarize.eval(v, out[(int)r]);
+            } else {
+                result.setValue(r, summarize.eval(v, result.getValue(r)));
+            }
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != jvars[j].getDomain()) {
+                    for (int k=0; k<=n; k++) {
+                        offsets[k] += strides[k][j];
+                    }
+                    break;
+                }
+                subidx[j] = 0;
+                for (int k=0; k<=n; k++) {
+                    offsets[k] -= rewinds[k][j];
+                }
+            }
+        }
+
+        return factory.adaptResult(result);
+    }
+
+    /**
+     * Obtains an iterator over all the positions of the given function,
+     * regardless of the elements that its representation actually stores.
+     *
+     * @param f function to iterate.
+     * @return iterator over all the positions of the function.
+     */
+    private static MasterIterator denseIterator(CostFunction f) {
+        if (f instanceof AbstractCostFunction) {
+            return ((AbstractCostFunction<?>)f).new DefaultMasterIterator();
+        }
+        return f.masterIterator();
+    }
+
+    /**
+     * Fills all the positions of the given result with the combination of
+     * the given functions.
+     *
+     * @param fs functions to combine (including this one).
+     * @param result function where to store the combination.
+     */
+    protected void _combine(CostFunction[] fs, CostFunction result) {
+        _combine(fs, result, false);
+    }
+
+    /**
+     * Fills all the positions of the given result with the combination of
+     * the given functions, optionally adding up the values produced.
+     *
+     * @param fs functions to combine (including this one).
+     * @param result function where to store the combination.
+     * @param sum whether to add up the non-nogood values of the result.
+     * @return sum of the non-nogood values of the result, or NaN if it has
+     *         not been computed.
+     */
+    private double _combine(CostFunction[] fs, CostFunction result, boolean sum) {
+        final Combine operation = factory.getCombineOperation();
+        final Variable[] rvars = result.getVariableSet().toArray(new Variable[0]);
+        final int n = fs.length;
+        final int len = rvars.length;
+
+        // Precompute the stride of every result variable in each operand
+        final long[][] strides = new long[n][];
+        final long[][] rewinds = new long[n][len];
+        final double[][] arrays = new double[n][];
+        for (int k=0; k<n; k++) {
+            if (!(fs[k] instanceof AbstractCostFunction)) {
+                _iteratorCombine(fs, result);
+                return Double.NaN;
+            }
+            strides[k] = ((AbstractCostFunction<?>)fs[k]).getStrides(rvars);
+            for (int j=0; j<len; j++) {
+                rewinds[k][j] = strides[k][j] * (rvars[j].getDomain() - 1);
+            }
+            if (fs[k] instanceof HypercubeCostFunction) {
+                arrays[k] = fs[k].getValues();
+            }
+        }
+        final double[] out = result instanceof HypercubeCostFunction ? result.getValues() : null;
+
+        boolean runs = out != null && len > 0;
+        for (int k=0; runs && k<n; k++) {
+            runs = arrays[k] != null;
+        }
+        if (runs) {
+            return _runCombine(arrays, strides, rewinds, rvars, out, sum);
+        }
+
+        // Walk the result's odometer, updating the operands' offsets with carries
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final int[] subidx = new int[len];
+        final long[] offsets = new long[n];
+        double total = 0;
+        for (long i=0, size=result.getSize(); i<size; i++) {
+            double v = arrays[0] != null ? arrays[0][(int)offsets[0]] : fs[0].getValue(offsets[0]);
+            for (int k=1; k<n; k++) {
+                final double v2 = arrays[k] != null ? arrays[k][(int)offsets[k]] : fs[k].getValue(offsets[k]);
+                v = operation.eval(v, v2);
+            }
+
+            if (Double.isNaN(v)) {
+                throw new RuntimeException("Combination generated a NaN value. Halting.");
+            }
+
+            if (out != null) {
+                out[(int)i] = v;
+            } else {
+                result.setValue(i, v);
+            }
+            if (v != ng) {
+                total += v;
+            }
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != rvars[j].getDomain()) {
+                    for (int k=0; k<n; k++) {
+                        offsets[k] += strides[k][j];
+                    }
+                    break;
+                }
+                subidx[j] = 0;
+                for (int k=0; k<n; k++) {
+                    offsets[k] -= rewinds[k][j];
+                }
+            }
+        }
+        return sum ? total : Double.NaN;
+    }
+
+    /**
+     * Fills the given hypercube result with the combination of the given
+     * hypercube arrays, one run of the result's last variable at a time.
+     *
+     * @return sum of the non-nogood values of the result if requested, or NaN
+     *         otherwise.
+     */
+    private double _runCombine(final double[][] arrays, final long[][] strides,
+            final long[][] rewinds, final Variable[] rvars, final double[] out,
+            final boolean sum)
+    {
+        final Combine operation = factory.getCombineOperation();
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final double[] total = new double[1];
+        final int n = arrays.length;
+        final int len = rvars.length;
+        final int run = rvars[len-1].getDomain();
+
+        // Choose the specialized kernel of each operand once
+        final Kernels.CombineKernel[] kernels = new Kernels.CombineKernel[n];
+        kernels[0] = Kernels.getCopyKernel((int)strides[0][len-1]);
+        for (int k=1; k<n; k++) {
+            kernels[k] = Kernels.getCombineKernel(operation, (int)strides[k][len-1]);
+        }
+
+        forRange(out.length, out.length, run, new RangeTask.Body() {
+            @Override
+            public void run(long from, long to) {
+                // Position the odometer at the beginning of the range
+                final int[] subidx = new int[len];
+                final long[] offsets = new long[n];
+                long idx = from;
+                for (int j=len-1; j>=0; j--) {
+                    subidx[j] = (int)(idx % rvars[j].getDomain());
+                    idx /= rvars[j].getDomain();
+                    for (int k=0; k<n; k++) {
+                        offsets[k] += strides[k][j] * subidx[j];
+                    }
+                }
+
+                double partial = 0;
+                for (int i=(int)from; i<to; i+=run) {
+                    for (int k=0; k<n; k++) {
+                        kernels[k].apply(out, i, arrays[k], (int)offsets[k],
+                                (int)strides[k][len-1], run);
+                    }
+
+                    if (Kernels.hasNaN(out, i, i + run)) {
+                        throw new RuntimeException("Combination generated a NaN value. Halting.");
+                    }
+                    if (sum) {
+                        partial += Kernels.sum(ng, out, i, i + run);
+                    }
+
+                    for (int j=len-2; j>=0; j--) {
+                        if (++subidx[j] != rvars[j].getDomain()) {
+                            for (int k=0; k<n; k++) {
+                                offsets[k] += strides[k][j];
+                            }
+                            break;
+                        }
+                        subidx[j] = 0;
+                        for (int k=0; k<n; k++) {
+                            offsets[k] -= rewinds[k][j];
+                        }
+                    }
+                }
+
+                if (sum) {
+                    synchronized (total) {
+                        total[0] += partial;
+                    }
+                }
+            }
+        });
+        return sum ? total[0] : Double.NaN;
     }
 
-    private static void _combine(List<CostFunction> fs, CostFunction result, Combine operation) {
-        final int niterators = fs.size();
+    /**
+     * Runs the given body over the range of elements [0, size), splitting it
+     * into parallel tasks when the work exceeds the factory's parallel
+     * threshold.
+     *
+     * @param size number of elements to process.
+     * @param work estimated number of operations.
+     * @param unit number of elements that must be processed together.
+     * @param body work to perform.
+     */
+    private void forRange(long size, long work, long unit, RangeTask.Body body) {
+        if (work <= factory.getParallelThreshold() || size <= unit) {
+            body.run(0, size);
+            return;
+        }
+        final ForkJoinPool pool = factory.getPool();
+        final long grain = Math.max(unit, size / (4L * pool.getParallelism()));
+        pool.invoke(new RangeTask(body, 0, size, grain, unit));
+    }
+
+    /**
+     * Fills all the positions of the given result with the combination of
+     * the given functions, locating the operands' elements through their
+     * conditioned iterators.
+     *
+     * @param fs functions to combine (including this one).
+     * @param result function where to store the combination.
+     */
+    private void _iteratorCombine(CostFunction[] fs, CostFunction result) {
+        final Combine operation = factory.getCombineOperation();
+        final int niterators = fs.length;
         ConditionedIterator[] iterators = new ConditionedIterator[niterators];
         for (int i=0; i<niterators; i++) {
-            iterators[i] = fs.get(i).conditionedIterator(result);
+            iterators[i] = fs[i].conditionedIterator(result);
         }
 
-        MasterIterator it = result.masterIterator();
+        MasterIterator it = denseIterator(result);
         final int[] subidx = it.getIndices();
         while (it.hasNext()) {
             final long idx = it.next();
-            double v = fs.get(0).getValue(iterators[0].nextSubidxs(subidx));
+            double v = fs[0].getValue(iterators[0].nextSubidxs(subidx));
             for (int i=1; i<niterators; i++) {
                 final long idx2 = iterators[i].nextSubidxs(subidx);
-                v = operation.eval(v, fs.get(i).getValue(idx2));
+                v = operation.eval(v, fs[i].getValue(idx2));
             }
 
             if (Double.isNaN(v)) {
@@ -585,12 +1149,35 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
         }
 
         CostFunction result = factory.buildCostFunction(this);
+        normalizeInto(result, Double.NaN);
+        return result;
+    }
+
+    /**
+     * Stores the normalization of this function into the given result, which
+     * may be this function itself.
+     *
+     * @param result function where to store the normalization.
+     * @param sum sum of the non-nogood values of this function, or NaN if it
+     *            has to be computed.
+     */
+    private void normalizeInto(CostFunction result, double sum) {
+        final Normalize mode = factory.getNormalizationType();
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final boolean arrays = this instanceof HypercubeCostFunction
+                && result instanceof HypercubeCostFunction;
 
         // Calculate aggregation
         TLongIterator it = iterator();
-        double sum = 0;
-        while(it.hasNext()) {
-            sum += getValue(it.next());
+        if (Double.isNaN(sum)) {
+            sum = 0;
+            if (arrays) {
+                sum = Kernels.sum(ng, getValues());
+            } else {
+                while(it.hasNext()) {
+                    sum += getValue(it.next());
+                }
+            }
         }
 
         //@TODO: This is noooot so clear.
@@ -599,6 +1186,18 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
         if (Double.isNaN(avg)) {
             throw new RuntimeException("Normalization generated a NaN value. Halting.");
         }
+        if (arrays && (mode == Normalize.SUM0 || sum != 0)) {
+            final double[] out = result.getValues();
+            if (mode == Normalize.SUM0) {
+                Kernels.scale(ng, getValues(), out, 1, -avg);
+            } else {
+                Kernels.scale(ng, getValues(), out, 1/sum, 0);
+            }
+            if (Kernels.hasNaN(out, 0, out.length)) {
+                throw new RuntimeException("Normalization generated a NaN value. Halting.");
+            }
+            return;
+        }
         it = iterator();
         switch (mode) {
             case SUM0:
@@ -621,8 +1220,6 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
                 }
                 break;
         }
-
-        return result;
     }
 
     @Override
@@ -641,18 +1238,51 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
             return result;
         }
 
-        CostFunction result = factory.buildCostFunction(newVariables.toArray(new Variable[0]), 0);
-        VariableAssignment map = null;
-        for (long i = 0, len = result.getSize(); i < len; i++) {
-            map = result.getMapping(i, map);
-            map.putAll(mapping);
-            final long idx = getIndex(map);
-            result.setValue(i, getValue(idx));
+        final Variable[] rvars = newVariables.toArray(new Variable[0]);
+        CostFunction result = factory.buildCostFunction(rvars,
+                factory.getSummarizeOperation().getNoGood(), factory.getDensity(this));
+
+        // Walk the slice of this function with an odometer over the remaining
+        // variables, starting at the offset of the fixed ones
+        final int len = rvars.length;
+        final long[] strides = getStrides(rvars);
+        final long[] rewinds = new long[len];
+        for (int j=0; j<len; j++) {
+            rewinds[j] = strides[j] * (rvars[j].getDomain() - 1);
+        }
+        final int[] subidx = new int[len];
+        final int run = rvars[len-1].getDomain();
+        final double[] src = this instanceof HypercubeCostFunction ? getValues() : null;
+        final double[] out = result instanceof HypercubeCostFunction ? result.getValues() : null;
+        final Kernels.CombineKernel copy = Kernels.getCopyKernel((int)strides[len-1]);
+        long offset = getIndex(mapping);
+        for (long i=0, size=result.getSize(); i<size; i+=run) {
+            if (src != null && out != null) {
+                copy.apply(out, (int)i, src, (int)offset, (int)strides[len-1], run);
+            } else {
+                for (int t=0; t<run; t++) {
+                    result.setValue(i + t, getValue(offset + t*strides[len-1]));
+                }
+            }
+
+            for (int j=len-2; j>=0; j--) {
+                if (++subidx[j] != rvars[j].getDomain()) {
+                    offset += strides[j];
+                    break;
+                }
+                subidx[j] = 0;
+                offset -= rewinds[j];
+            }
         }
 
         return result;
     }
 
+    @Override
+    public CostFunction slice(VariableAssignment mapping) {
+        return new SliceCostFunction(this, mapping);
+    }
+
     @Override
     public void setValue(int[] index, double value) {
         setValue(subindexToIndex(index), value);
@@ -665,13 +1295,13 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
      * @param subindex vector of variable configurations (indices).
      * @return corresponding linearized index.
      */
-    protected int subindexToIndex(int[] subindex) {
+    protected long subindexToIndex(int[] subindex) {
         // Check index lengths
         if (subindex.length != sizes.length) {
             throw new IllegalArgumentException("Invalid index specification");
         }
         // Compute subindex -> index offset
-        int idx = 0;
+        long idx = 0;
         for (int i = 0; i < subindex.length; i++) {
             // Check domain limits
             if (variables[i].getDomain() <= subindex[i]) {
@@ -686,10 +1316,175 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
     public CostFunction summarize(Variable[] vars) {
         Summarize operation = factory.getSummarizeOperation();
 
-        // Choose between sparse and dense functions
+        // Choose between sparse and dense functions. Each result element
+        // summarizes "ratio" elements of this function, and is a nogood only
+        // if all of them are.
+        double density = factory.getDensity(this);
+        final double ratio = (double)size / sizeOf(vars);
+        if (ratio > 1) {
+            density = 1 - Math.pow(1 - density, ratio);
+        }
         CostFunction result;
-        result = factory.buildCostFunction(vars, operation.getNoGood());
+        result = factory.buildCostFunction(vars, operation.getNoGood(), density);
+        _summarize(result);
+        return factory.adaptResult(result);
+    }
+
+    @Override
+    public CostFunction[] summarizeAll() {
+        final Summarize operation = factory.getSummarizeOperation();
+        final int len = variables.length;
+        final double[][] marginals = new double[len][];
+        for (int j=0; j<len; j++) {
+            marginals[j] = new double[variables[j].getDomain()];
+            Arrays.fill(marginals[j], operation.getNoGood());
+        }
 
+        final double[] src = this instanceof HypercubeCostFunction ? getValues() : null;
+        MasterIterator it = masterIterator();
+        final int[] subidx = it.getIndices();
+        while (it.hasNext()) {
+            final long i = it.next();
+            final double v = src != null ? src[(int)i] : getValue(i);
+            for (int j=0; j<len; j++) {
+                final double[] m = marginals[j];
+                m[subidx[j]] = operation.eval(v, m[subidx[j]]);
+            }
+        }
+
+        CostFunction[] result = new CostFunction[len];
+        for (int j=0; j<len; j++) {
+            result[j] = factory.buildCostFunction(new Variable[]{variables[j]}, 0);
+            result[j].setValues(marginals[j]);
+            result[j] = factory.adaptResult(result[j]);
+        }
+        return result;
+    }
+
+    /**
+     * Summarizes this function into the given result, which must be
+     * initialized to nogoods.
+     *
+     * When the result's variables are a subset of this function's, every
+     * result element is reduced in a tight loop over the elements that
+     * summarize into it. These are gathered through precomputed strides, or
+     * read as a single contiguous block when the summarized variables are the
+     * trailing ones.
+     *
+     * @param result function where to store the summarization.
+     */
+    protected void _summarize(CostFunction result) {
+        if (!variableSet.containsAll(result.getVariableSet())) {
+            _iteratorSummarize(result);
+            return;
+        }
+
+        final Summarize operation = factory.getSummarizeOperation();
+        final Variable[] rvars = result.getVariableSet().toArray(new Variable[0]);
+        final int rlen = rvars.length;
+        final long[] rstrides = getStrides(rvars);
+        final long[] rrewinds = new long[rlen];
+        for (int j=0; j<rlen; j++) {
+            rrewinds[j] = rstrides[j] * (rvars[j].getDomain() - 1);
+        }
+
+        // Summarized variables, and whether they are the trailing ones
+        final int elen = variables.length - rlen;
+        final Variable[] evars = new Variable[elen];
+        long block = 1;
+        boolean contiguous = true;
+        for (int i=0, j=0; i<variables.length; i++) {
+            if (!result.getVariableSet().contains(variables[i])) {
+                evars[j++] = variables[i];
+                block *= variables[i].getDomain();
+            } else if (j > 0) {
+                contiguous = false;
+            }
+        }
+        final long[] estrides = getStrides(evars);
+        final long[] erewinds = new long[elen];
+        for (int j=0; j<elen; j++) {
+            erewinds[j] = estrides[j] * (evars[j].getDomain() - 1);
+        }
+
+        final double[] src = this instanceof HypercubeCostFunction ? getValues() : null;
+        final double[] out = result instanceof HypercubeCostFunction ? result.getValues() : null;
+        final Kernels.ReduceKernel reduce = Kernels.getReduceKernel(operation);
+        final boolean trailing = contiguous;
+        final long blockSize = block;
+        final CostFunction res = result;
+        RangeTask.Body body = new RangeTask.Body() {
+            @Override
+            public void run(long from, long to) {
+                // Position the odometer at the beginning of the range
+                final int[] rsubidx = new int[rlen];
+                final int[] esubidx = new int[elen];
+                long base = 0;
+                long idx = from;
+                for (int j=rlen-1; j>=0; j--) {
+                    rsubidx[j] = (int)(idx % rvars[j].getDomain());
+                    idx /= rvars[j].getDomain();
+                    base += rstrides[j] * rsubidx[j];
+                }
+
+                for (long r=from; r<to; r++) {
+                    double acc = out != null ? out[(int)r] : res.getValue(r);
+                    if (trailing && src != null) {
+                        acc = reduce.apply(src, (int)base, (int)(base + blockSize), acc);
+                    } else if (trailing) {
+                        for (long i=base, end=base + blockSize; i<end; i++) {
+                            acc = operation.eval(getValue(i), acc);
+                        }
+                    } else {
+                        long offset = base;
+                        for (long e=0; e<blockSize; e++) {
+                            acc = operation.eval(src != null ? src[(int)offset] : getValue(offset), acc);
+                            for (int j=elen-1; j>=0; j--) {
+                                if (++esubidx[j] != evars[j].getDomain()) {
+                                    offset += estrides[j];
+                                    break;
+                                }
+                                esubidx[j] = 0;
+                                offset -= erewinds[j];
+                            }
+                        }
+                    }
+
+                    if (out != null) {
+                        out[(int)r] = acc;
+                    } else {
+                        res.setValue(r, acc);
+                    }
+
+                    for (int j=rlen-1; j>=0; j--) {
+                        if (++rsubidx[j] != rvars[j].getDomain()) {
+                            base += rstrides[j];
+                            break;
+                        }
+                        rsubidx[j] = 0;
+                        base -= rrewinds[j];
+                    }
+                }
+            }
+        };
+
+        // Only hypercube results can be written concurrently
+        if (out != null) {
+            forRange(out.length, size, 1, body);
+        } else {
+            body.run(0, result.getSize());
+        }
+    }
+
+    /**
+     * Summarizes this function into the given result, which must be
+     * initialized to nogoods, visiting only the elements enumerated by this
+     * function's master iterator.
+     *
+     * @param result function where to store the summarization.
+     */
+    protected void _iteratorSummarize(CostFunction result) {
+        final Summarize operation = factory.getSummarizeOperation();
         MasterIterator it = masterIterator();
         final int[] subidxs = it.getIndices();
         ConditionedIterator rit = result.conditionedIterator(this);
@@ -703,7 +1498,28 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
                 result.setValue(idx, operation.eval(getValue(i), result.getValue(idx)));
             }
         }
-        return result;
+    }
+
+    /**
+     * Computes the stride of each of the given variables in the linearized
+     * indices of this function.
+     *
+     * @param reference variables whose strides to compute.
+     * @return strides of the given variables, with zeros for the variables
+     *         that are not in this function.
+     */
+    protected long[] getStrides(Variable[] reference) {
+        final int len = variables.length;
+        long[] strides = new long[reference.length];
+        for (int i=0; i<len; i++) {
+            for (int j=0; j<reference.length; j++) {
+                if (variables[i].equals(reference[j])) {
+                    strides[j] = sizes[len - i - 1];
+                    break;
+                }
+            }
+        }
+        return strides;
     }
 
     @Override
@@ -752,21 +1568,87 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
             return Math.abs(e) <= delta;
         }
 
-        VariableAssignment map = null;
-        for (long i=0; i<size; i++) {
-            map = this.getMapping(i, map);
-            final double v1 = getValue(i);
-            final double v2 = other.getValue(map);
-            if (Double.isNaN(v1) || Double.isNaN(v2)) {
-                return false;
+        // NaN differences are never within the delta
+        return difference(other, true) <= delta;
+    }
+
+    @Override
+    public double maxAbsDifference(CostFunction other) {
+        return difference(other, true);
+    }
+
+    @Override
+    public double l1Difference(CostFunction other) {
+        return difference(other, false);
+    }
+
+    /**
+     * Computes the maximum or the sum of the absolute differences between the
+     * values of this function and those of the given one, aligning the
+     * other's values through its strides when possible.
+     */
+    private double difference(CostFunction other, boolean max) {
+        if (this.variableSet != other.getVariableSet()
+                && !this.variableSet.equals(other.getVariableSet())) {
+            throw new IllegalArgumentException("Functions must have the same variables.");
+        }
+
+        final int len = variables.length;
+        double acc = 0;
+        if (len == 0) {
+            return accumulate(acc, getValue(0), other.getValue(0), max);
+        }
+
+        if (!(other instanceof AbstractCostFunction)) {
+            VariableAssignment map = null;
+            for (long i=0; i<size; i++) {
+                map = getMapping(i, map);
+                acc = accumulate(acc, getValue(i), other.getValue(map), max);
+            }
+            return acc;
+        }
+
+        // Walk the other function with an odometer over this one's variables
+        final long[] strides = ((AbstractCostFunction)other).getStrides(variables);
+        final long[] rewinds = new long[len];
+        for (int j=0; j<len; j++) {
+            rewinds[j] = strides[j] * (variables[j].getDomain() - 1);
+        }
+        final int[] subidx = new int[len];
+        final int run = variables[len-1].getDomain();
+        final int stride = (int)strides[len-1];
+        final double[] a = this instanceof HypercubeCostFunction ? getValues() : null;
+        final double[] b = other instanceof HypercubeCostFunction ? other.getValues() : null;
+        long offset = 0;
+        for (long i=0; i<size; i+=run) {
+            if (a != null && b != null) {
+                acc = max
+                        ? Kernels.maxAbsDifference(a, (int)i, b, (int)offset, stride, run, acc)
+                        : Kernels.l1Difference(a, (int)i, b, (int)offset, stride, run, acc);
+            } else {
+                for (int t=0; t<run; t++) {
+                    acc = accumulate(acc, getValue(i + t), other.getValue(offset + t*stride), max);
+                }
             }
-            final double e = getValue(i) - other.getValue(map);
-            if (Math.abs(e) > delta) {
-                return false;
+
+            for (int j=len-2; j>=0; j--) {
+                if (++subidx[j] != variables[j].getDomain()) {
+                    offset += strides[j];
+                    break;
+                }
+                subidx[j] = 0;
+                offset -= rewinds[j];
             }
         }
+        return acc;
+    }
 
-        return true;
+    private static double accumulate(double acc, double x, double y, boolean max) {
+        if (x == y) {
+            return acc;
+        }
+        final double e = Math.abs(x - y);
+        return max ? Math.max(acc, e) : acc + e;
     }
 
     @Override
@@ -776,6 +1658,100 @@ public abstract class AbstractCostFunction<T> implements CostFunction {
         return hash;
     }
 
+    /**
+     * Implements the Iterator interface over the non-nogood elements of this
+     * function, by checking the value of every position.
+     */
+    protected class DefaultIterator implements TLongIterator {
+        private long idx;
+        private double ng = getFactory().getSummarizeOperation().getNoGood();
+
+        public DefaultIterator() {
+            idx = -1;
+            findNextGood();
+        }
+
+        private void findNextGood() {
+            idx++;
+            while (idx < size && getValue(idx) == ng) {
+                idx++;
+            }
+            if (idx == size) {
+                idx = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= 0 && idx < size;
+        }
+
+        @Override
+        public long next() {
+            if (idx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long res = idx;
+            findNextGood();
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+    }
+
+    /**
+     * Implements the MasterIterator interface over all the positions of this
+     * function, maintaining the non-linearized indices while iterating.
+     */
+    protected class DefaultMasterIterator implements MasterIterator {
+        private final int[] subidx = new int[variables.length];
+        private long idx;
+
+        public DefaultMasterIterator() {
+            idx = -1;
+            if (variables.length > 0) {
+                subidx[variables.length-1] = -1;
+            }
+        }
+
+        private void incIdx() {
+            idx++;
+            for (int i=variables.length-1; i>=0; i--) {
+                if (++subidx[i] != variables[i].getDomain()) {
+                    break;
+                } else {
+                    subidx[i] = 0;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= -1 && idx < size-1;
+        }
+
+        @Override
+        public long next() {
+            incIdx();
+            return idx;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
+        }
+
+        @Override
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
     protected class DefaultConditionedIterator implements ConditionedIterator {
         private int[] referenceIdxs;
         private int[] idxsToReference;
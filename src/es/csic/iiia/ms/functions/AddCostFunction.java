@@ -0,0 +1,749 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Cost Function implementation backed by an algebraic decision diagram (ADD).
+ *
+ * Each internal node of the diagram tests one of the function's variables,
+ * and has a child for every value in its domain, whereas terminal nodes hold
+ * the function's values. Nodes are hash-consed, so the diagram never holds
+ * two equal nodes nor nodes whose children are all the same. Hence, functions
+ * with large constant regions, or whose values only depend on a few variables
+ * in most branches, are stored compactly.
+ *
+ * Variables are tested following the order in which they are given to the
+ * function. Combinations, summarizations, reductions and the optimal
+ * configuration search are performed over the diagrams, so that their cost is
+ * proportional to the size of the diagrams rather than to the size of the
+ * hypercube. Operands with other representations (or incompatible variable
+ * orders) are converted first.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class AddCostFunction extends AbstractCostFunction implements Serializable {
+
+    /**
+     * Root of the diagram.
+     */
+    private Node root;
+
+    /**
+     * Unique table of the diagram's nodes (rebuilt after deserialization).
+     */
+    private transient HashMap<Node, Node> unique = new HashMap<>();
+
+    /**
+     * Number of live nodes after the last garbage collection.
+     */
+    private int live = 0;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     */
+    protected AddCostFunction(Variable[] variables) {
+        super(variables);
+        root = terminal(0);
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected AddCostFunction(CostFunction factor) {
+        super(factor);
+        if (factor instanceof AddCostFunction) {
+            final AddCostFunction other = (AddCostFunction)factor;
+            root = other.root;
+            collectGarbage();
+        } else {
+            setValues(factor.getValues());
+        }
+    }
+
+    /**
+     * Get the number of nodes (including terminals) of this function's
+     * diagram.
+     *
+     * @return number of nodes of the diagram.
+     */
+    public int getNodeCount() {
+        return collect(root, new IdentityHashMap<Node, Node>()).size();
+    }
+
+    private Map<Node, Node> collect(Node node, Map<Node, Node> reached) {
+        if (reached.put(node, node) == null && node.children != null) {
+            for (Node child : node.children) {
+                collect(child, reached);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Rebuilds the unique table, dropping the nodes no longer reachable from
+     * the root.
+     */
+    private void collectGarbage() {
+        unique = new HashMap<>(collect(root, new HashMap<Node, Node>()));
+        live = unique.size();
+    }
+
+    /**
+     * Get the (unique) terminal node holding the given value.
+     */
+    private Node terminal(double value) {
+        return intern(new Node(variables.length, value, null));
+    }
+
+    /**
+     * Get the (unique) node testing the variable at the given level and with
+     * the given children.
+     */
+    private Node node(int level, Node[] children) {
+        boolean redundant = true;
+        for (int i=1; i<children.length && redundant; i++) {
+            redundant = children[i] == children[0];
+        }
+        if (redundant) {
+            return children[0];
+        }
+        return intern(new Node(level, 0, children));
+    }
+
+    private Node intern(Node node) {
+        if (unique == null) {
+            collectGarbage();
+        }
+        final Node existing = unique.get(node);
+        if (existing != null) {
+            return existing;
+        }
+        unique.put(node, node);
+        return node;
+    }
+
+    /**
+     * Get the child of the given node for the given value of the variable at
+     * the given level (the node itself when it does not test that variable).
+     */
+    private static Node child(Node node, int level, int value) {
+        return node.level == level ? node.children[value] : node;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        double[] result = new double[(int)size];
+        expand(root, 0, 0, result);
+        return result;
+    }
+
+    private void expand(Node node, int level, int offset, double[] result) {
+        if (level == variables.length) {
+            result[offset] = node.value;
+            return;
+        }
+        final int stride = (int)sizes[variables.length - level - 1];
+        for (int i=0, len=variables[level].getDomain(); i<len; i++) {
+            expand(child(node, level, i), level + 1, offset + i*stride, result);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        unique = new HashMap<>();
+        root = build(values, 0, 0);
+        collectGarbage();
+    }
+
+    private Node build(double[] values, int level, int offset) {
+        if (level == variables.length) {
+            return terminal(values[offset]);
+        }
+        final int stride = (int)sizes[variables.length - level - 1];
+        final Node[] children = new Node[variables[level].getDomain()];
+        for (int i=0; i<children.length; i++) {
+            children[i] = build(values, level + 1, offset + i*stride);
+        }
+        return node(level, children);
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        unique = new HashMap<>();
+        root = terminal(initialValue);
+        live = 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        Node node = root;
+        while (node.children != null) {
+            final long stride = sizes[variables.length - node.level - 1];
+            final int value = (int)(index / stride % variables[node.level].getDomain());
+            node = node.children[value];
+        }
+        return node.value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        root = set(root, 0, indexToSubindex(index), value);
+        if (unique.size() > 2 * live + 1024) {
+            collectGarbage();
+        }
+    }
+
+    private Node set(Node node, int level, int[] subidx, double value) {
+        if (level == variables.length) {
+            return terminal(value);
+        }
+        final Node[] children = new Node[variables[level].getDomain()];
+        for (int i=0; i<children.length; i++) {
+            children[i] = child(node, level, i);
+        }
+        children[subidx[level]] = set(children[subidx[level]], level + 1, subidx, value);
+        return node(level, children);
+    }
+
+    /**
+     * Get the given function as a diagram whose variables follow the order
+     * in which they appear in the given reference.
+     */
+    private AddCostFunction toDiagram(CostFunction f, Variable[] reference) {
+        final List<Variable> order = new ArrayList<>();
+        for (Variable v : reference) {
+            if (f.getVariableSet().contains(v)) {
+                order.add(v);
+            }
+        }
+        if (f instanceof AddCostFunction
+                && Arrays.equals(((AddCostFunction)f).variables, order.toArray())) {
+            return (AddCostFunction)f;
+        }
+
+        AddCostFunction result = new AddCostFunction(order.toArray(new Variable[0]));
+        result.setFactory(getFactory());
+        if (result.variables.length == 0) {
+            result.initialize(f.getValue(0));
+            return result;
+        }
+        double[] values = new double[(int)result.size];
+        VariableAssignment map = null;
+        for (int i=0; i<values.length; i++) {
+            map = result.getMapping(i, map);
+            values[i] = f.getValue(map);
+        }
+        result.setValues(values);
+        return result;
+    }
+
+    /**
+     * Computes the level in the given reference of each of the levels of the
+     * given diagram (including its terminal level).
+     */
+    private static int[] getLevels(AddCostFunction f, Variable[] reference) {
+        final int[] levels = new int[f.variables.length + 1];
+        for (int i=0; i<f.variables.length; i++) {
+            levels[i] = Arrays.asList(reference).indexOf(f.variables[i]);
+        }
+        levels[f.variables.length] = reference.length;
+        return levels;
+    }
+
+    @Override
+    protected void _combine(CostFunction f2, CostFunction result) {
+        _combine(new CostFunction[]{this, f2}, result);
+    }
+
+    /**
+     * Combination kernel that applies the combine operation over the
+     * operands' diagrams, when the result is also a diagram.
+     */
+    @Override
+    protected void _combine(CostFunction[] fs, CostFunction result) {
+        if (!(result instanceof AddCostFunction)) {
+            super._combine(fs, result);
+            return;
+        }
+
+        final AddCostFunction r = (AddCostFunction)result;
+        final Node[] nodes = new Node[fs.length];
+        final int[][] levels = new int[fs.length][];
+        for (int k=0; k<fs.length; k++) {
+            final AddCostFunction f = toDiagram(fs[k], r.variables);
+            nodes[k] = f.root;
+            levels[k] = getLevels(f, r.variables);
+        }
+        r.root = r.apply(nodes, levels, new HashMap<Key, Node>());
+        r.collectGarbage();
+    }
+
+    /**
+     * Combines the given operand nodes (which belong to other diagrams) into a
+     * node of this diagram.
+     */
+    private Node apply(Node[] nodes, int[][] levels, Map<Key, Node> cache) {
+        final Key key = new Key(nodes, -1);
+        Node result = cache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        final CostFunctionFactory factory = getFactory();
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        final boolean absorbing = factory.isNoGoodAbsorbing();
+        int top = variables.length;
+        for (int k=0; k<nodes.length; k++) {
+            final Node n = nodes[k];
+            top = Math.min(top, levels[k][n.level]);
+            if (absorbing && n.children == null && n.value == ng) {
+                top = -1;
+                break;
+            }
+        }
+
+        if (top == -1) {
+            result = terminal(ng);
+        } else if (top == variables.length) {
+            final Combine operation = factory.getCombineOperation();
+            double v = nodes[0].value;
+            for (int k=1; k<nodes.length; k++) {
+                v = operation.eval(v, nodes[k].value);
+            }
+            if (Double.isNaN(v)) {
+                throw new RuntimeException("Combination generated a NaN value. Halting.");
+            }
+            result = terminal(v);
+        } else {
+            final Node[] children = new Node[variables[top].getDomain()];
+            final Node[] next = new Node[nodes.length];
+            for (int i=0; i<children.length; i++) {
+                for (int k=0; k<nodes.length; k++) {
+                    final Node n = nodes[k];
+                    next[k] = levels[k][n.level] == top ? n.children[i] : n;
+                }
+                children[i] = apply(next, levels, cache);
+            }
+            result = node(top, children);
+        }
+
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Summarizes the two given nodes of this diagram into a single one.
+     */
+    private Node summarize(Node n1, Node n2, Summarize operation, Map<Key, Node> cache) {
+        if (n1 == n2 && (operation == Summarize.MAX || operation == Summarize.MIN)) {
+            return n1;
+        }
+        final Key key = new Key(new Node[]{n1, n2}, -2);
+        Node result = cache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        final int top = Math.min(n1.level, n2.level);
+        if (top == variables.length) {
+            result = terminal(operation.eval(n1.value, n2.value));
+        } else {
+            final Node[] children = new Node[variables[top].getDomain()];
+            for (int i=0; i<children.length; i++) {
+                children[i] = summarize(child(n1, top, i), child(n2, top, i), operation, cache);
+            }
+            result = node(top, children);
+        }
+
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Summarization kernel that abstracts the removed variables away from
+     * this diagram, when the result is a diagram whose variables follow this
+     * function's order.
+     */
+    @Override
+    protected void _summarize(CostFunction result) {
+        if (!(result instanceof AddCostFunction)) {
+            super._summarize(result);
+            return;
+        }
+
+        AddCostFunction r = (AddCostFunction)result;
+        final int[] levels = new int[variables.length + 1];
+        int last = -1;
+        for (int i=0; i<variables.length; i++) {
+            levels[i] = Arrays.asList(r.variables).indexOf(variables[i]);
+            if (levels[i] >= 0) {
+                if (levels[i] < last) {
+                    super._summarize(result);
+                    return;
+                }
+                last = levels[i];
+            }
+        }
+        levels[variables.length] = r.variables.length;
+
+        final Summarize operation = getFactory().getSummarizeOperation();
+        final Node abstracted = r.abstractNode(root, 0, this, levels, operation,
+                new HashMap<Key, Node>(), new HashMap<Key, Node>());
+        // Merge with the result's initial contents, as the generic kernel does
+        r.root = r.summarize(r.root, abstracted, operation, new HashMap<Key, Node>());
+        r.collectGarbage();
+    }
+
+    /**
+     * Abstracts the variables of the source diagram that are not in this one
+     * away from the given source node, building a node of this diagram.
+     */
+    private Node abstractNode(Node node, int level, AddCostFunction source, int[] levels,
+            Summarize operation, Map<Key, Node> cache, Map<Key, Node> summarizeCache)
+    {
+        if (level == source.variables.length) {
+            return terminal(node.value);
+        }
+        final Key key = new Key(new Node[]{node}, level);
+        Node result = cache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        final int domain = source.variables[level].getDomain();
+        if (levels[level] >= 0) {
+            final Node[] children = new Node[domain];
+            for (int i=0; i<domain; i++) {
+                children[i] = abstractNode(child(node, level, i), level + 1, source, levels,
+                        operation, cache, summarizeCache);
+            }
+            result = node(levels[level], children);
+        } else {
+            for (int i=0; i<domain; i++) {
+                final Node c = abstractNode(child(node, level, i), level + 1, source, levels,
+                        operation, cache, summarizeCache);
+                result = result == null ? c : summarize(result, c, operation, summarizeCache);
+            }
+        }
+
+        cache.put(key, result);
+        return result;
+    }
+
+    @Override
+    public CostFunction reduce(VariableAssignment mapping) {
+        final CostFunctionFactory factory = getFactory();
+        if (mapping == null || mapping.isEmpty()
+                || factory.getRepresentation() != Representation.ADD) {
+            return super.reduce(mapping);
+        }
+
+        LinkedHashSet<Variable> newVariables = new LinkedHashSet<Variable>(
+                Arrays.asList(variables));
+        newVariables.removeAll(mapping.keySet());
+        if (newVariables.isEmpty()) {
+            return super.reduce(mapping);
+        }
+
+        AddCostFunction result = (AddCostFunction)factory.buildCostFunction(
+                newVariables.toArray(new Variable[0]), 0);
+        final int[] levels = new int[variables.length + 1];
+        final int[] fixed = new int[variables.length];
+        for (int i=0, j=0; i<variables.length; i++) {
+            final Integer value = mapping.get(variables[i]);
+            fixed[i] = value == null ? -1 : value;
+            levels[i] = value == null ? j++ : -1;
+        }
+        levels[variables.length] = result.variables.length;
+        result.root = result.restrict(root, 0, this, fixed, levels, new HashMap<Key, Node>());
+        result.collectGarbage();
+        return result;
+    }
+
+    /**
+     * Restricts the given source node to the fixed variable values, building
+     * a node of this diagram.
+     */
+    private Node restrict(Node node, int level, AddCostFunction source, int[] fixed,
+            int[] levels, Map<Key, Node> cache)
+    {
+        while (level < source.variables.length && fixed[level] >= 0) {
+            node = child(node, level, fixed[level]);
+            level++;
+        }
+        if (level == source.variables.length) {
+            return terminal(node.value);
+        }
+
+        final Key key = new Key(new Node[]{node}, level);
+        Node result = cache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        final Node[] children = new Node[source.variables[level].getDomain()];
+        for (int i=0; i<children.length; i++) {
+            children[i] = restrict(child(node, level, i), level + 1, source, fixed, levels, cache);
+        }
+        result = node(levels[level], children);
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Get the index of the optimal configuration, following the best branch
+     * of the diagram at every node.
+     * <p/>
+     * A random one is chosen when there are multiple optimal branches.
+     *
+     * @return index of the optimal configuration of this function.
+     */
+    @Override
+    protected long getOptimalConfigurationIndex(Random random) {
+        final Summarize operation = getFactory().getSummarizeOperation();
+        if (operation != Summarize.MAX && operation != Summarize.MIN) {
+            return super.getOptimalConfigurationIndex(random);
+        }
+
+        final IdentityHashMap<Node, Double> best = new IdentityHashMap<>();
+        if (best(root, operation, best) == operation.getNoGood()) {
+            throw new RuntimeException("Unable to optimize this factor");
+        }
+
+        final int[] subidx = new int[variables.length];
+        Node node = root;
+        for (int level=0; level<variables.length; level++) {
+            final int domain = variables[level].getDomain();
+            if (node.level != level) {
+                subidx[level] = random.nextInt(domain);
+                continue;
+            }
+            final double optimal = best.get(node);
+            int ties = 0;
+            for (int i=0; i<domain; i++) {
+                if (best.get(node.children[i]) == optimal && random.nextInt(++ties) == 0) {
+                    subidx[level] = i;
+                }
+            }
+            node = node.children[subidx[level]];
+        }
+        return subindexToIndex(subidx);
+    }
+
+    private double best(Node node, Summarize operation, Map<Node, Double> best) {
+        Double value = best.get(node);
+        if (value != null) {
+            return value;
+        }
+        if (node.children == null) {
+            value = node.value;
+        } else {
+            value = operation.getNoGood();
+            for (Node c : node.children) {
+                value = operation.eval(value, best(c, operation, best));
+            }
+        }
+        best.put(node, value);
+        return value;
+    }
+
+    /**
+     * Node of an algebraic decision diagram.
+     */
+    private static final class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Level of the variable tested by this node, or the number of
+         * variables if this is a terminal.
+         */
+        private final int level;
+
+        /**
+         * Value of this node (only for terminals).
+         */
+        private final double value;
+
+        /**
+         * Children of this node (null for terminals).
+         */
+        private final Node[] children;
+
+        /**
+         * Hash code of this node, which depends on the identity of its
+         * children and hence is computed lazily.
+         */
+        private transient int hash;
+
+        Node(int level, double value, Node[] children) {
+            this.level = level;
+            this.value = value;
+            this.children = children;
+        }
+
+        @Override
+        public int hashCode() {
+            if (hash == 0) {
+                int h = 31 * level + Double.valueOf(value).hashCode();
+                if (children != null) {
+                    for (Node c : children) {
+                        h = 31 * h + System.identityHashCode(c);
+                    }
+                }
+                hash = h == 0 ? 1 : h;
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            final Node other = (Node)obj;
+            if (level != other.level || hashCode() != other.hashCode()
+                    || Double.compare(value, other.value) != 0) {
+                return false;
+            }
+            if (children == null || other.children == null) {
+                return children == other.children;
+            }
+            if (children.length != other.children.length) {
+                return false;
+            }
+            for (int i=0; i<children.length; i++) {
+                if (children[i] != other.children[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Memoization key made of a tuple of nodes (compared by identity) and a
+     * tag.
+     */
+    private static final class Key {
+
+        private final Node[] nodes;
+
+        private final int tag;
+
+        private final int hash;
+
+        Key(Node[] nodes, int tag) {
+            this.nodes = nodes.clone();
+            this.tag = tag;
+            int h = tag;
+            for (Node n : nodes) {
+                h = 31 * h + System.identityHashCode(n);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key)obj;
+            if (tag != other.tag || nodes.length != other.nodes.length) {
+                return false;
+            }
+            for (int i=0; i<nodes.length; i++) {
+                if (nodes[i] != other.nodes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Cardinality potential over binary variables, whose value only depends on
+ * the number of variables set to 1.
+ *
+ * Cardinality functions are read-only, and never store their hypercube. Hence,
+ * they can involve more variables than any other representation. Their
+ * max-marginals are computed in O(n log n) time by sorting the incoming
+ * messages' differences (see {@link #getMaxMarginals(CostFunction[])}),
+ * instead of enumerating all the configurations.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class CardinalityCostFunction extends AbstractCostFunction {
+
+    /**
+     * Value of this function for each number of active variables.
+     */
+    private final double[] potentials;
+
+    /**
+     * Creates a new cardinality CostFunction.
+     *
+     * @param variables involved in this factor, which must be binary.
+     * @param potentials value of this function for each number of active
+     *                   variables (from 0 to the number of variables).
+     */
+    protected CardinalityCostFunction(Variable[] variables, double[] potentials) {
+        super(variables);
+        for (Variable v : variables) {
+            if (v.getDomain() != 2) {
+                throw new IllegalArgumentException("Cardinality functions only support binary variables.");
+            }
+        }
+        if (potentials.length != variables.length + 1) {
+            throw new IllegalArgumentException("Cardinality functions need a potential for each "
+                    + "number of active variables.");
+        }
+        this.potentials = potentials.clone();
+    }
+
+    /**
+     * Get the value of this function when the given number of variables are
+     * active.
+     *
+     * @param count number of active variables.
+     * @return value of the function.
+     */
+    public double getPotential(int count) {
+        return potentials[count];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        if (size < 0 || size > HypercubeCostFunction.MAX_SIZE) {
+            throw new UnsupportedOperationException("This cardinality function is too large to be expanded.");
+        }
+        double[] result = new double[(int)size];
+        MasterIterator it = masterIterator();
+        final int[] subidx = it.getIndices();
+        while (it.hasNext()) {
+            result[(int)it.next()] = getValue(subidx);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        throw new UnsupportedOperationException("Cardinality functions are read-only.");
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        throw new UnsupportedOperationException("Cardinality functions are read-only.");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        if (size < 0) {
+            throw new UnsupportedOperationException("This cardinality function is too large to be indexed.");
+        }
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        return getValue(indexToSubindex(index));
+    }
+
+    @Override
+    public double getValue(int[] index) {
+        int count = 0;
+        for (int value : index) {
+            count += value;
+        }
+        return potentials[count];
+    }
+
+    @Override
+    public double getValue(VariableAssignment mapping) {
+        int count = 0;
+        for (Variable v : variables) {
+            final Integer value = mapping.get(v);
+            if (value == null) {
+                return getFactory().getCombineOperation().getNeutralValue();
+            }
+            count += value;
+        }
+        return potentials[count];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        throw new UnsupportedOperationException("Cardinality functions are read-only.");
+    }
+
+    /**
+     * Get the optimal configuration of this function, which activates the
+     * first variables up to the optimal count.
+     *
+     * @param mapping variable mapping to fill (or null to create a new one).
+     * @return optimal configuration of this function.
+     */
+    @Override
+    public VariableAssignment getOptimalConfiguration(VariableAssignment mapping) {
+        if (mapping == null) {
+            mapping = new VariableAssignment(variables.length);
+        }
+        if (variables.length == 0) {
+            return mapping;
+        }
+
+        final Summarize operation = getFactory().getSummarizeOperation();
+        int best = -1;
+        double optimal = operation.getNoGood();
+        for (int count=0; count<potentials.length; count++) {
+            if (operation.isBetter(potentials[count], optimal)) {
+                optimal = potentials[count];
+                best = count;
+            }
+        }
+        if (best < 0) {
+            throw new RuntimeException("Unable to optimize this factor");
+        }
+
+        for (int i=0; i<variables.length; i++) {
+            mapping.put(variables[i], i < best ? 1 : 0);
+        }
+        return mapping;
+    }
+
+    /**
+     * Computes the max-marginals (or min-marginals) of the combination of
+     * this function with the given messages, excluding each variable's own
+     * message.
+     *
+     * Let d_j be the difference between the values of the j-th message for
+     * states 1 and 0. The best combination with k active variables activates
+     * the k variables with the best differences, so sorting them once gives
+     * the marginals of all the variables in O(n log n) time, as in the
+     * tractable higher-order potentials of Tarlow et al. Only additive
+     * combination and maximizing or minimizing summarization are supported.
+     *
+     * @param messages unary message over each of this function's variables
+     *                 (following the order of the variables), or null for
+     *                 neutral messages.
+     * @return unary marginal over each of this function's variables.
+     * @throws IllegalArgumentException if some message is not unary over its
+     *                                  variable.
+     */
+    public CostFunction[] getMaxMarginals(CostFunction[] messages) {
+        final CostFunctionFactory factory = getFactory();
+        final Summarize operation = factory.getSummarizeOperation();
+        if (factory.getCombineOperation() != Combine.SUM
+                || (operation != Summarize.MAX && operation != Summarize.MIN)) {
+            throw new UnsupportedOperationException("Cardinality marginals are only supported "
+                    + "for max-sum and min-sum.");
+        }
+        final int n = variables.length;
+        if (messages.length != n) {
+            throw new IllegalArgumentException("A message is needed for each variable.");
+        }
+        for (int i=0; i<n; i++) {
+            if (messages[i] != null && (messages[i].getVariableSet().size() != 1
+                    || !messages[i].getVariableSet().contains(variables[i]))) {
+                throw new IllegalArgumentException("Message " + messages[i]
+                        + " is not unary over variable " + variables[i] + ".");
+            }
+        }
+
+        // Work as if maximizing, negating everything when minimizing
+        final double sign = operation == Summarize.MAX ? 1 : -1;
+        final double ng = Double.NEGATIVE_INFINITY;
+        final double[] theta = new double[n + 1];
+        for (int k=0; k<=n; k++) {
+            theta[k] = sign * potentials[k];
+        }
+
+        // Variables whose message forbids a state are forced to the other one
+        final double[] m0 = new double[n], m1 = new double[n];
+        int forced1 = 0, dead = 0;
+        double forcedSum = 0;
+        int free = 0;
+        for (int i=0; i<n; i++) {
+            m0[i] = messages[i] == null ? 0 : sign * messages[i].getValue(0);
+            m1[i] = messages[i] == null ? 0 : sign * messages[i].getValue(1);
+            if (m0[i] == ng && m1[i] == ng) {
+                dead++;
+            } else if (m0[i] == ng) {
+                forced1++;
+                forcedSum += m1[i];
+            } else if (m1[i] == ng) {
+                forcedSum += m0[i];
+            } else {
+                free++;
+            }
+        }
+
+        // Sort the free variables by decreasing difference
+        final Integer[] order = new Integer[free];
+        double freeSum = 0;
+        for (int i=0, j=0; i<n; i++) {
+            if (m0[i] != ng && m1[i] != ng) {
+                order[j++] = i;
+                freeSum += m0[i];
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i, Integer j) {
+                return Double.compare(m1[j] - m0[j], m1[i] - m0[i]);
+            }
+        });
+        final int[] rank = new int[n];
+        final double[] prefix = new double[free + 1];
+        for (int r=0; r<free; r++) {
+            rank[order[r]] = r;
+            prefix[r+1] = prefix[r] + m1[order[r]] - m0[order[r]];
+        }
+
+        // For a free variable of rank r and state v, the others' best sum with
+        // t active free variables is prefix[t] if t <= r, and
+        // prefix[t+1] - d otherwise.
+        final double[][] head = new double[2][free];
+        final double[][] tail = new double[2][free + 1];
+        for (int v=0; v<2; v++) {
+            double best = ng;
+            for (int t=0; t<free; t++) {
+                best = Math.max(best, theta[t + forced1 + v] + prefix[t]);
+                head[v][t] = best;
+            }
+            best = ng;
+            tail[v][free] = ng;
+            for (int t=free-1; t>=0; t--) {
+                if (t + 1 < free) {
+                    best = Math.max(best, theta[t + 1 + forced1 + v] + prefix[t + 2]);
+                }
+                tail[v][t] = best;
+            }
+        }
+
+        // Non-free variables only differ in the number of forced activations
+        final double[] forced = new double[]{Double.NaN, Double.NaN, Double.NaN};
+
+        final CostFunction[] result = new CostFunction[n];
+        for (int i=0; i<n; i++) {
+            final boolean isFree = m0[i] != ng && m1[i] != ng;
+            final boolean isDead = m0[i] == ng && m1[i] == ng;
+            final boolean isForced1 = m0[i] == ng && !isDead;
+            final double[] values = new double[2];
+            for (int v=0; v<2; v++) {
+                double best;
+                if (dead - (isDead ? 1 : 0) > 0) {
+                    best = ng;
+                } else if (isFree) {
+                    final double d = m1[i] - m0[i];
+                    best = Math.max(head[v][rank[i]], tail[v][rank[i]] - d)
+                            + freeSum - m0[i] + forcedSum;
+                } else {
+                    final double own = isDead ? 0 : (isForced1 ? m1[i] : m0[i]);
+                    final int active = forced1 - (isForced1 ? 1 : 0) + v;
+                    if (Double.isNaN(forced[active - forced1 + 1])) {
+                        double b = ng;
+                        for (int t=0; t<=free; t++) {
+                            b = Math.max(b, theta[t + active] + prefix[t]);
+                        }
+                        forced[active - forced1 + 1] = b;
+                    }
+                    best = forced[active - forced1 + 1] + freeSum + forcedSum - own;
+                }
+                values[v] = sign * best;
+            }
+            result[i] = factory.buildCostFunction(new Variable[]{variables[i]}, 0);
+            result[i].setValues(values);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plan to combine a set of functions and summarize the combination over some
+ * variables, by eliminating the other variables one at a time.
+ *
+ * Each elimination combines the functions that involve the eliminated
+ * variable and summarizes it out, so the plan never builds the combination of
+ * all the functions. Variables are eliminated greedily, choosing at each step
+ * the one whose elimination involves the smallest table. This is only valid
+ * when summarization distributes over combination, as happens in max-sum,
+ * min-sum and sum-product.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class ContractionPlan {
+
+    private final List<CostFunction> functions;
+
+    private final Variable[] keep;
+
+    private final List<Variable> order = new ArrayList<>();
+
+    private final boolean distributive;
+
+    private double cost = 0;
+
+    private double naiveCost;
+
+    /**
+     * Plans the combination of the given functions and its summarization over
+     * the given variables.
+     *
+     * @param factory factory whose operations to use.
+     * @param fs functions to combine.
+     * @param keep variables to summarize over.
+     */
+    public ContractionPlan(CostFunctionFactory factory, Collection<CostFunction> fs,
+            Variable[] keep) {
+        functions = new ArrayList<>();
+        for (CostFunction f : fs) {
+            if (f != null) {
+                functions.add(f);
+            }
+        }
+        this.keep = keep;
+
+        final Combine combine = factory.getCombineOperation();
+        final Summarize summarize = factory.getSummarizeOperation();
+        distributive = (combine == Combine.SUM && summarize != Summarize.SUM)
+                || (combine == Combine.PRODUCT && summarize == Summarize.SUM);
+
+        // Cost of combining everything at once
+        List<Set<Variable>> scopes = new ArrayList<>();
+        LinkedHashSet<Variable> all = new LinkedHashSet<>();
+        for (CostFunction f : functions) {
+            scopes.add(new LinkedHashSet<>(f.getVariableSet()));
+            all.addAll(f.getVariableSet());
+        }
+        naiveCost = sizeOf(all) * functions.size();
+        if (!distributive || !all.containsAll(Arrays.asList(keep))) {
+            cost = naiveCost;
+            return;
+        }
+
+        // Greedily eliminate the variable with the smallest bucket
+        final List<Variable> keepList = Arrays.asList(keep);
+        while (true) {
+            Variable best = null;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (Variable v : all) {
+                if (keepList.contains(v) || order.contains(v)) {
+                    continue;
+                }
+                int n = 0;
+                Set<Variable> bucket = new LinkedHashSet<>();
+                for (Set<Variable> s : scopes) {
+                    if (s.contains(v)) {
+                        bucket.addAll(s);
+                        n++;
+                    }
+                }
+                final double c = sizeOf(bucket) * n;
+                if (c < bestCost) {
+                    best = v;
+                    bestCost = c;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+
+            order.add(best);
+            cost += bestCost;
+            Set<Variable> bucket = new LinkedHashSet<>();
+            for (int i=scopes.size()-1; i>=0; i--) {
+                if (scopes.get(i).contains(best)) {
+                    bucket.addAll(scopes.remove(i));
+                }
+            }
+            bucket.remove(best);
+            scopes.add(bucket);
+        }
+
+        LinkedHashSet<Variable> remaining = new LinkedHashSet<>();
+        for (Set<Variable> s : scopes) {
+            remaining.addAll(s);
+        }
+        cost += sizeOf(remaining) * scopes.size();
+    }
+
+    private static double sizeOf(Collection<Variable> variables) {
+        double size = 1;
+        for (Variable v : variables) {
+            size *= v.getDomain();
+        }
+        return size;
+    }
+
+    /**
+     * Get the order in which variables are eliminated.
+     *
+     * @return elimination order.
+     */
+    public List<Variable> getEliminationOrder() {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Get the estimated cost (number of element operations) of this plan.
+     *
+     * @return estimated cost of this plan.
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Get the estimated cost of combining all the functions at once.
+     *
+     * @return estimated cost of combining all the functions at once.
+     */
+    public double getNaiveCost() {
+        return naiveCost;
+    }
+
+    /**
+     * Checks whether this plan is cheaper than combining all the functions at
+     * once.
+     *
+     * @return true if this plan should be executed.
+     */
+    public boolean isWorthwhile() {
+        return distributive && cost < naiveCost;
+    }
+
+    /**
+     * Executes this plan.
+     *
+     * @return summarization over the planned variables of the combination of
+     *         the planned functions.
+     */
+    public CostFunction execute() {
+        List<CostFunction> pending = new ArrayList<>(functions);
+        List<CostFunction> intermediates = new ArrayList<>();
+
+        for (Variable v : order) {
+            List<CostFunction> bucket = new ArrayList<>();
+            LinkedHashSet<Variable> vars = new LinkedHashSet<>();
+            for (int i=0; i<pending.size(); i++) {
+                if (pending.get(i).getVariableSet().contains(v)) {
+                    vars.addAll(pending.get(i).getVariableSet());
+                    bucket.add(pending.remove(i--));
+                }
+            }
+            vars.remove(v);
+
+            CostFunction f = bucket.get(0).combineAndSummarize(bucket.subList(1, bucket.size()),
+                    vars.toArray(new Variable[0]));
+            for (CostFunction b : bucket) {
+                releaseIntermediate(intermediates, b);
+            }
+            intermediates.add(f);
+            pending.add(f);
+        }
+
+        CostFunction result = pending.get(0).combineAndSummarize(
+                pending.subList(1, pending.size()), keep);
+        for (CostFunction f : intermediates) {
+            if (f != result) {
+                f.release();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the given function if it is one of the (identical)
+     * intermediate results of this plan.
+     */
+    private static void releaseIntermediate(List<CostFunction> intermediates, CostFunction f) {
+        for (int i=0; i<intermediates.size(); i++) {
+            if (intermediates.get(i) == f) {
+                intermediates.remove(i).release();
+                return;
+            }
+        }
+    }
+
+}
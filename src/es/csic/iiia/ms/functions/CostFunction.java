@@ -43,6 +43,7 @@ import gnu.trove.iterator.TLongIterator;
 import gnu.trove.list.TLongList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -62,6 +63,15 @@ public interface CostFunction {
      */
     CostFunction summarize(Variable[] vars);
 
+    /**
+     * Summarize this factor onto each one of its variables, in a single pass.
+     *
+     * @return a new unary CostFunction for each variable of this one
+     * (following their order), which is the result of summarizing this one
+     * over that variable.
+     */
+    CostFunction[] summarizeAll();
+
     /**
      * Combine this factor with the given one.
      *
@@ -80,6 +90,21 @@ public interface CostFunction {
      */
     CostFunction combine(Collection<CostFunction> fs);
 
+    /**
+     * Combine this factor with the given ones, and summarize the combination
+     * over the specified variables.
+     *
+     * This is equivalent to <code>combine(fs).summarize(vars)</code>, but
+     * streams the combined values into the summarization instead of building
+     * the whole combination.
+     *
+     * @param fs list of functions to combine with.
+     * @param vars variables to summarize.
+     * @return a new CostFunction which is the result of summarizing the
+     * combination between this and the given ones over the specified variables.
+     */
+    CostFunction combineAndSummarize(Collection<CostFunction> fs, Variable[] vars);
+
     /**
      * Negates this factor, converting all its values into their negative counterparts.
      *
@@ -103,6 +128,15 @@ public interface CostFunction {
      */
     CostFunction normalize();
 
+    /**
+     * Combines this factor with the given ones and normalizes the result in
+     * the factory's mode, without building an intermediate factor.
+     *
+     * @param fs factors to combine with.
+     * @return normalized combination of all the factors.
+     */
+    CostFunction combineAndNormalize(Collection<CostFunction> fs);
+
     /**
      * Reduces the factor, fixing the variable-value pairs of the mapping table.
      *
@@ -111,6 +145,44 @@ public interface CostFunction {
      */
     CostFunction reduce(VariableAssignment mapping);
 
+    /**
+     * Reduces the factor without copying it, fixing the variable-value pairs
+     * of the mapping table.
+     *
+     * The result is a read-only view over this factor's values, so it
+     * reflects any later changes to them.
+     *
+     * @param mapping variable-value pairs to fix.
+     * @return read-only view of the reduced factor.
+     */
+    CostFunction slice(VariableAssignment mapping);
+
+    /**
+     * Computes the maximum absolute difference between the values of this
+     * factor and those of the given one, which must involve the same
+     * variables (in any order).
+     *
+     * Equal values (including equal infinities) do not differ, and a NaN
+     * value makes the result NaN.
+     *
+     * @param other factor to compare with.
+     * @return maximum absolute difference between both factors.
+     */
+    double maxAbsDifference(CostFunction other);
+
+    /**
+     * Computes the sum of the absolute differences between the values of this
+     * factor and those of the given one, which must involve the same
+     * variables (in any order).
+     *
+     * Equal values (including equal infinities) do not differ, and a NaN
+     * value makes the result NaN.
+     *
+     * @param other factor to compare with.
+     * @return sum of the absolute differences between both factors.
+     */
+    double l1Difference(CostFunction other);
+
     /**
      * {@inheritDoc}
      */
@@ -140,6 +212,29 @@ public interface CostFunction {
      */
     VariableAssignment getOptimalConfiguration(VariableAssignment mapping);
 
+    /**
+     * Returns the linearized index of the optimal configuration of this factor.
+     *
+     * Ties between optimal configurations are broken uniformly at random by
+     * reservoir sampling, so no memory is allocated for them.
+     *
+     * @param random random number generator used to break ties, or null to
+     *               use the factory's one.
+     * @return index of the optimal configuration.
+     */
+    long getOptimalIndex(Random random);
+
+    /**
+     * Returns the optimal configuration of this factor as the values of its
+     * variables, in the same order as {@link #getVariableSet()}.
+     *
+     * @param values array to fill, instantiated if null.
+     * @param random random number generator used to break ties, or null to
+     *               use the factory's one.
+     * @return values of the variables in the optimal configuration.
+     */
+    int[] getOptimalValues(int[] values, Random random);
+
     /**
      * Returns <strong>the first</strong> index of the values array corresponding to the specified
      * variables mapping.
@@ -296,6 +391,13 @@ public interface CostFunction {
      */
     public ConditionedIterator conditionedIterator(CostFunction master);
 
+    /**
+     * Releases the resources (such as scratch files) held by this function.
+     *
+     * The function can not be used after being released.
+     */
+    public void release();
+
     public void setFactory(CostFunctionFactory factory);
 
     public CostFunctionFactory getFactory();
@@ -44,6 +44,10 @@ import es.csic.iiia.ms.functions.HypercubeCostFunction;
 import es.csic.iiia.ms.op.Combine;
 import es.csic.iiia.ms.op.Normalize;
 import es.csic.iiia.ms.op.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -66,8 +70,119 @@ public class CostFunctionFactory {
      */
     private Normalize normalizationType = Normalize.NONE;
 
+    /**
+     * Representation of the functions built by this factory.
+     */
+    private Representation representation = Representation.DENSE;
+
+    /**
+     * Density below which the adaptive representation builds sparse functions.
+     */
+    private double sparseThreshold = 0.1;
+
+    /**
+     * Density above which the adaptive representation turns sparse functions
+     * into dense ones.
+     */
+    private double denseThreshold = 0.25;
+
+    /**
+     * Size (in bytes) above which dense functions are mapped to scratch files.
+     */
+    private long spillThreshold = Long.MAX_VALUE;
+
+    /**
+     * Directory where scratch files are created (<code>null</code> for the
+     * default temporary-file directory).
+     */
+    private File scratchDirectory = null;
+
+    /**
+     * Size (in elements) above which operations are split into parallel
+     * tasks.
+     */
+    private long parallelThreshold = Long.MAX_VALUE;
+
+    /**
+     * Pool where parallel tasks are executed.
+     */
+    private ForkJoinPool pool = null;
+
+    /**
+     * Number of bits per element of quantized functions.
+     */
+    private int quantizationBits = 16;
+
+    /**
+     * Cost representing forbidden configurations in integer functions.
+     */
+    private int top = Integer.MAX_VALUE;
+
+    /**
+     * Random number generator used to break ties between optimal
+     * configurations.
+     */
+    private Random random = new Random();
+
     public CostFunction buildCostFunction(Variable[] variables, double initialValue) {
-        HypercubeCostFunction c = new HypercubeCostFunction(variables);
+        return buildCostFunction(variables, initialValue, 1);
+    }
+
+    /**
+     * Builds a new cost function, whose expected fraction of non-nogood
+     * elements is the given density.
+     *
+     * The density is only used to choose the representation of the function
+     * when using the {@link Representation#ADAPTIVE} representation.
+     *
+     * @param variables variables of the new function.
+     * @param initialValue initial value of all the function's elements.
+     * @param density expected fraction of non-nogood elements.
+     * @return new cost function.
+     */
+    public CostFunction buildCostFunction(Variable[] variables, double initialValue,
+            double density) {
+        Representation r = representation;
+        if (r == Representation.ADAPTIVE) {
+            r = density < sparseThreshold ? Representation.SPARSE : Representation.DENSE;
+        }
+
+        if (r == Representation.SPARSE) {
+            SparseCostFunction c = new SparseCostFunction(variables,
+                    summarizeOperation.getNoGood());
+            c.setFactory(this);
+            c.initialize(initialValue);
+            return c;
+        }
+
+        if (r == Representation.ADD) {
+            AddCostFunction c = new AddCostFunction(variables);
+            c.setFactory(this);
+            c.initialize(initialValue);
+            return c;
+        }
+
+        AbstractCostFunction c;
+        switch (resolveDense(r, sizeOf(variables))) {
+            case MAPPED:
+                c = new MappedCostFunction(variables, scratchDirectory);
+                break;
+            case OFFHEAP:
+                c = new OffHeapHypercubeCostFunction(variables);
+                break;
+            case FLOAT:
+                c = new FloatHypercubeCostFunction(variables);
+                break;
+            case QUANTIZED:
+                c = new QuantizedCostFunction(variables, quantizationBits,
+                        summarizeOperation.getNoGood());
+                break;
+            case INTEGER:
+                c = new IntegerCostFunction(variables, top);
+                break;
+            default:
+                c = new HypercubeCostFunction(variables);
+        }
         c.setFactory(this);
         if (initialValue != 0) {
             c.initialize(initialValue);
@@ -75,15 +190,288 @@ public class CostFunctionFactory {
         return c;
     }
 
+    /**
+     * Builds a new intensional cost function, whose values are computed on
+     * demand by the given oracle instead of being stored.
+     *
+     * @param variables variables of the new function.
+     * @param oracle oracle computing the function's values.
+     * @return new cost function.
+     * @see IntensionalCostFunction
+     */
+    public CostFunction buildCostFunction(Variable[] variables, ValueOracle oracle) {
+        IntensionalCostFunction c = new IntensionalCostFunction(variables, oracle);
+        c.setFactory(this);
+        return c;
+    }
+
+    /**
+     * Builds a new cardinality cost function, whose value only depends on the
+     * number of (binary) variables set to 1.
+     *
+     * @param variables binary variables of the new function.
+     * @param potentials value of the function for each number of active
+     *                   variables (from 0 to the number of variables).
+     * @return new cost function.
+     * @see CardinalityCostFunction
+     */
+    public CardinalityCostFunction buildCardinalityCostFunction(Variable[] variables,
+            double[] potentials) {
+        CardinalityCostFunction c = new CardinalityCostFunction(variables, potentials);
+        c.setFactory(this);
+        return c;
+    }
+
+    /**
+     * Chooses the actual representation of a dense function of the given size.
+     *
+     * Functions exceeding the spill threshold are mapped to scratch files, and
+     * functions too large for an array are stored off-heap.
+     */
+    private Representation resolveDense(Representation r, long size) {
+        final int bytes;
+        switch (r) {
+            case FLOAT:
+            case INTEGER:
+                bytes = 4;
+                break;
+            case QUANTIZED:
+                bytes = quantizationBits / 8;
+                break;
+            default:
+                bytes = 8;
+        }
+        if (r == Representation.MAPPED || size > spillThreshold / bytes) {
+            return Representation.MAPPED;
+        }
+        if (r == Representation.OFFHEAP || size < 0 || size > HypercubeCostFunction.MAX_SIZE) {
+            return Representation.OFFHEAP;
+        }
+        if (r == Representation.FLOAT || r == Representation.QUANTIZED
+                || r == Representation.INTEGER) {
+            return r;
+        }
+        return Representation.DENSE;
+    }
+
+    /**
+     * Computes the size of the hypercube formed by the given variables.
+     *
+     * @return size of the hypercube, or -1 if it overflows.
+     */
+    private static long sizeOf(Variable[] variables) {
+        long size = 1;
+        for (Variable v : variables) {
+            size *= v.getDomain();
+            if (size < 0) {
+                return -1;
+            }
+        }
+        return size;
+    }
+
     public CostFunction buildCostFunction(CostFunction function) {
-        HypercubeCostFunction c = new HypercubeCostFunction(function);
+        Representation r = representation;
+        if (r == Representation.ADAPTIVE) {
+            // Copies keep the representation unless it is clearly wrong
+            r = getRepresentation(function);
+            if (r == Representation.SPARSE && getDensity(function) > denseThreshold) {
+                r = Representation.DENSE;
+            }
+        }
+        return buildCostFunction(function, r);
+    }
+
+    private CostFunction buildCostFunction(CostFunction function, Representation r) {
+        if (r == Representation.SPARSE) {
+            SparseCostFunction c = new SparseCostFunction(function);
+            c.setFactory(this);
+            return c;
+        }
+
+        if (r == Representation.ADD) {
+            AddCostFunction c = new AddCostFunction(function);
+            c.setFactory(this);
+            return c;
+        }
+
+        AbstractCostFunction c;
+        switch (resolveDense(r, function.getSize())) {
+            case MAPPED:
+                c = new MappedCostFunction(function, scratchDirectory);
+                break;
+            case OFFHEAP:
+                c = new OffHeapHypercubeCostFunction(function);
+                break;
+            case FLOAT:
+                c = new FloatHypercubeCostFunction(function);
+                break;
+            case QUANTIZED:
+                c = new QuantizedCostFunction(function, quantizationBits);
+                break;
+            case INTEGER:
+                c = new IntegerCostFunction(function, top);
+                break;
+            default:
+                c = new HypercubeCostFunction(function);
+        }
         c.setFactory(this);
         return c;
     }
 
+    /**
+     * Converts the given function to the specified representation.
+     *
+     * @param function function to convert.
+     * @param representation target (non-adaptive) representation.
+     * @return the same function if it already has the target representation,
+     *         or a converted copy otherwise.
+     */
+    public CostFunction convert(CostFunction function, Representation representation) {
+        if (representation == Representation.ADAPTIVE) {
+            throw new IllegalArgumentException("Functions can not be converted to an adaptive representation");
+        }
+        if (getRepresentation(function) == representation) {
+            return function;
+        }
+        return buildCostFunction(function, representation);
+    }
+
+    /**
+     * Converts the given function to the representation that suits its actual
+     * density, if it has crossed the adaptive thresholds.
+     *
+     * Does nothing unless this factory uses the {@link Representation#ADAPTIVE}
+     * representation.
+     *
+     * @param function function to adapt.
+     * @return the same function if its representation is still adequate, or
+     *         a converted copy otherwise.
+     */
+    public CostFunction adapt(CostFunction function) {
+        if (representation != Representation.ADAPTIVE) {
+            return function;
+        }
+
+        if (getRepresentation(function) == Representation.SPARSE) {
+            if (getDensity(function) > denseThreshold) {
+                return buildCostFunction(function, Representation.DENSE);
+            }
+        } else if (!isDenserThan(function, sparseThreshold)) {
+            return buildCostFunction(function, Representation.SPARSE);
+        }
+        return function;
+    }
+
+    /**
+     * Adapts a result built by this factory, releasing it when it is
+     * converted so that off-heap or mapped storage is not leaked until
+     * garbage collection.
+     *
+     * @param result freshly built function owned by the caller.
+     * @return the same function if its representation is still adequate, or
+     *         a converted copy otherwise.
+     * @see #adapt(CostFunction)
+     */
+    CostFunction adaptResult(CostFunction result) {
+        final CostFunction adapted = adapt(result);
+        if (adapted != result) {
+            result.release();
+        }
+        return adapted;
+    }
+
+    /**
+     * Get the representation of the given function.
+     *
+     * @param function function to check.
+     * @return representation of the function.
+     */
+    public Representation getRepresentation(CostFunction function) {
+        if (function instanceof SparseCostFunction) {
+            return Representation.SPARSE;
+        }
+        if (function instanceof OffHeapHypercubeCostFunction) {
+            return Representation.OFFHEAP;
+        }
+        if (function instanceof MappedCostFunction) {
+            return Representation.MAPPED;
+        }
+        if (function instanceof FloatHypercubeCostFunction) {
+            return Representation.FLOAT;
+        }
+        if (function instanceof QuantizedCostFunction) {
+            return Representation.QUANTIZED;
+        }
+        if (function instanceof IntegerCostFunction) {
+            return Representation.INTEGER;
+        }
+        if (function instanceof AddCostFunction) {
+            return Representation.ADD;
+        }
+        return Representation.DENSE;
+    }
+
+    /**
+     * Get the known fraction of non-nogood elements of the given function.
+     *
+     * This is only known (without scanning the function) for sparse functions,
+     * so any other function is assumed to be completely dense.
+     *
+     * @param function function to check.
+     * @return fraction of non-nogood elements of the function.
+     */
+    public double getDensity(CostFunction function) {
+        if (function instanceof SparseCostFunction) {
+            final SparseCostFunction f = (SparseCostFunction)function;
+            if (f.getDefaultValue() == summarizeOperation.getNoGood() && f.getSize() > 0) {
+                return (double)f.getStoredSize() / f.getSize();
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Checks whether the fraction of non-nogood elements of the given function
+     * exceeds the given density, stopping the scan as soon as it does.
+     */
+    private boolean isDenserThan(CostFunction function, double density) {
+        final double limit = density * function.getSize();
+        long count = 0;
+        TLongIterator it = function.iterator();
+        while (it.hasNext()) {
+            it.next();
+            if (++count > limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <em>true</em> if combining a nogood with any other value
+     * always yields a nogood under the current operations.
+     *
+     * This is the case when maximizing (or minimizing) sums, and when summing
+     * products, and allows to skip all the nogood elements of a function when
+     * combining it.
+     *
+     * @return true if nogoods absorb any other value when combined.
+     */
+    public boolean isNoGoodAbsorbing() {
+        switch (combineOperation) {
+            case SUM:
+                return summarizeOperation != Summarize.SUM;
+            case PRODUCT:
+                return summarizeOperation == Summarize.SUM;
+        }
+        return false;
+    }
+
     public void setMode(Summarize summarizeOperation,
             Combine combineOperation,
             Normalize normalizationType) {
+        checkNormalization(representation, normalizationType);
         this.combineOperation = combineOperation;
         this.summarizeOperation = summarizeOperation;
         this.normalizationType = normalizationType;
@@ -102,6 +490,7 @@ public class CostFunctionFactory {
     }
 
     public void setNormalizationType(Normalize normalizationType) {
+        checkNormalization(representation, normalizationType);
         this.normalizationType = normalizationType;
     }
 
@@ -113,4 +502,161 @@ public class CostFunctionFactory {
         this.summarizeOperation = summarizeOperation;
     }
 
+    public Representation getRepresentation() {
+        return representation;
+    }
+
+    /**
+     * Sets the representation of the functions built by this factory.
+     *
+     * @param representation representation of the functions.
+     * @throws IllegalArgumentException if the representation can not hold
+     *                                  the values produced by the current
+     *                                  normalization.
+     */
+    public void setRepresentation(Representation representation) {
+        checkNormalization(representation, normalizationType);
+        this.representation = representation;
+    }
+
+    /**
+     * Checks that the given representation can hold the values produced by
+     * the given normalization. Integer functions can not, because normalized
+     * values are not integral.
+     */
+    private static void checkNormalization(Representation representation,
+            Normalize normalizationType) {
+        if (representation == Representation.INTEGER && normalizationType != Normalize.NONE) {
+            throw new IllegalArgumentException("Integer functions can only be used "
+                    + "without normalization.");
+        }
+    }
+
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Sets the size (in bytes) above which dense functions are stored in
+     * memory-mapped scratch files instead of memory.
+     *
+     * @param spillThreshold size above which functions are spilled to disk.
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public File getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public void setScratchDirectory(File scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    public long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the size (in elements) above which combinations and
+     * summarizations of hypercubes are split into parallel fork/join tasks.
+     *
+     * Operations are always sequential by default.
+     *
+     * @param parallelThreshold size above which operations are parallel.
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Get the pool where parallel tasks are executed, creating one with as
+     * many threads as processors if none has been set.
+     *
+     * @return pool where parallel tasks are executed.
+     */
+    public synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    public synchronized void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Sets the random number generator used to break ties between optimal
+     * configurations, so that they can be reproduced by seeding it.
+     *
+     * @param random random number generator to use.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    public int getQuantizationBits() {
+        return quantizationBits;
+    }
+
+    /**
+     * Sets the number of bits per element of quantized functions.
+     *
+     * @param quantizationBits number of bits per element (8 or 16).
+     */
+    public void setQuantizationBits(int quantizationBits) {
+        if (quantizationBits != 8 && quantizationBits != 16) {
+            throw new IllegalArgumentException("Quantized functions can only use 8 or 16 bits per element.");
+        }
+        this.quantizationBits = quantizationBits;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Sets the cost representing forbidden configurations in integer
+     * functions. Costs are saturated at this value, which is reported as the
+     * nogood.
+     *
+     * @param top cost representing forbidden configurations.
+     */
+    public void setTop(int top) {
+        this.top = top;
+    }
+
+    public double getSparseThreshold() {
+        return sparseThreshold;
+    }
+
+    public double getDenseThreshold() {
+        return denseThreshold;
+    }
+
+    /**
+     * Sets the density thresholds of the adaptive representation.
+     *
+     * Functions are built sparse when their expected density is below the
+     * sparse threshold, and turned dense when their actual density exceeds
+     * the dense one. Hence, the sparse threshold can not be higher than the
+     * dense one.
+     *
+     * @param sparseThreshold density below which functions are made sparse.
+     * @param denseThreshold density above which functions are made dense.
+     */
+    public void setThresholds(double sparseThreshold, double denseThreshold) {
+        if (sparseThreshold > denseThreshold) {
+            throw new IllegalArgumentException("The sparse threshold can not be higher than the dense one.");
+        }
+        this.sparseThreshold = sparseThreshold;
+        this.denseThreshold = denseThreshold;
+    }
+
 }
@@ -0,0 +1,296 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values in
+ * a linearized array of floats. Therefore, it takes half the memory of an
+ * {@link HypercubeCostFunction}, at the expense of precision.
+ *
+ * Values are only converted to doubles when they are read through the
+ * {@link CostFunction} interface. Combinations and summarizations between
+ * float functions are performed in single precision.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class FloatHypercubeCostFunction extends AbstractCostFunction<FloatHypercubeCostFunction>
+        implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Hypercube values storage array.
+     */
+    private float[] values;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     */
+    protected FloatHypercubeCostFunction(Variable[] variables) {
+        super(variables);
+        if (size < 0 || size > HypercubeCostFunction.MAX_SIZE) {
+            throw new UnsupportedOperationException("Hypercube cost functions can not hold "
+                    + "more than " + HypercubeCostFunction.MAX_SIZE + " elements.");
+        }
+        values = new float[(int)size];
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected FloatHypercubeCostFunction(CostFunction factor) {
+        super(factor);
+        if (factor instanceof FloatHypercubeCostFunction) {
+            values = ((FloatHypercubeCostFunction)factor).values.clone();
+        } else {
+            values = new float[(int)size];
+            for (int i=0; i<values.length; i++) {
+                values[i] = (float)factor.getValue(i);
+            }
+        }
+    }
+
+    /**
+     * Get the single-precision values of this function.
+     *
+     * @return hypercube values storage array.
+     */
+    public float[] getFloatValues() {
+        return values;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        double[] result = new double[values.length];
+        for (int i=0; i<values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        if (values.length != this.values.length) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        for (int i=0; i<values.length; i++) {
+            this.values[i] = (float)values[i];
+        }
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        Arrays.fill(values, initialValue.floatValue());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        return values[(int)index];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        values[(int)index] = (float)value;
+    }
+
+    @Override
+    protected void _combine(CostFunction f2, CostFunction result) {
+        if (f2 instanceof FloatHypercubeCostFunction
+                && result instanceof FloatHypercubeCostFunction) {
+            combine(new FloatHypercubeCostFunction[]{this, (FloatHypercubeCostFunction)f2},
+                    (FloatHypercubeCostFunction)result);
+        } else {
+            super._combine(f2, result);
+        }
+    }
+
+    @Override
+    protected void _combine(CostFunction[] fs, CostFunction result) {
+        if (!(result instanceof FloatHypercubeCostFunction)) {
+            super._combine(fs, result);
+            return;
+        }
+
+        FloatHypercubeCostFunction[] ffs = new FloatHypercubeCostFunction[fs.length];
+        for (int i=0; i<ffs.length; i++) {
+            final CostFunction f = fs[i];
+            if (!(f instanceof FloatHypercubeCostFunction)) {
+                super._combine(fs, result);
+                return;
+            }
+            ffs[i] = (FloatHypercubeCostFunction)f;
+        }
+        combine(ffs, (FloatHypercubeCostFunction)result);
+    }
+
+    /**
+     * Single-precision combination kernel, that walks the result positions
+     * while incrementally updating the position of each operand.
+     */
+    private void combine(FloatHypercubeCostFunction[] fs, FloatHypercubeCostFunction result) {
+        final boolean sum = getFactory().getCombineOperation() == Combine.SUM;
+        final Variable[] rvars = result.variables;
+        final int len = rvars.length;
+        final int n = fs.length;
+
+        final float[][] vs = new float[n][];
+        final int[][] strides = new int[n][len];
+        final int[][] rewinds = new int[n][len];
+        for (int k=0; k<n; k++) {
+            vs[k] = fs[k].values;
+            final long[] s = fs[k].getStrides(rvars);
+            for (int j=0; j<len; j++) {
+                strides[k][j] = (int)s[j];
+                rewinds[k][j] = (int)s[j] * (rvars[j].getDomain() - 1);
+            }
+        }
+
+        final float[] rv = result.values;
+        final int[] subidx = new int[len];
+        final int[] offsets = new int[n];
+        for (int i=0; i<rv.length; i++) {
+            float v = vs[0][offsets[0]];
+            for (int k=1; k<n; k++) {
+                final float w = vs[k][offsets[k]];
+                v = sum ? v + w : v * w;
+            }
+            if (Float.isNaN(v)) {
+                throw new RuntimeException("Combination generated a NaN value. Halting.");
+            }
+            rv[i] = v;
+
+            // Advance the result's odometer, moving the operands accordingly
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != rvars[j].getDomain()) {
+                    for (int k=0; k<n; k++) {
+                        offsets[k] += strides[k][j];
+                    }
+                    break;
+                }
+                subidx[j] = 0;
+                for (int k=0; k<n; k++) {
+                    offsets[k] -= rewinds[k][j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Single-precision summarization kernel, used when the result is a float
+     * function over a subset of this function's variables.
+     */
+    @Override
+    protected void _summarize(CostFunction result) {
+        if (!(result instanceof FloatHypercubeCostFunction)
+                || !variableSet.containsAll(result.getVariableSet())) {
+            super._summarize(result);
+            return;
+        }
+
+        final Summarize operation = getFactory().getSummarizeOperation();
+        final int len = variables.length;
+        final long[] s = ((FloatHypercubeCostFunction)result).getStrides(variables);
+        final int[] strides = new int[len];
+        final int[] rewinds = new int[len];
+        for (int j=0; j<len; j++) {
+            strides[j] = (int)s[j];
+            rewinds[j] = (int)s[j] * (variables[j].getDomain() - 1);
+        }
+
+        final float[] rv = ((FloatHypercubeCostFunction)result).values;
+        final int[] subidx = new int[len];
+        int offset = 0;
+        for (int i=0; i<values.length; i++) {
+            final float v = values[i];
+            switch (operation) {
+                case MAX:
+                    if (v > rv[offset]) {
+                        rv[offset] = v;
+                    }
+                    break;
+                case MIN:
+                    if (v < rv[offset]) {
+                        rv[offset] = v;
+                    }
+                    break;
+                case SUM:
+                    rv[offset] += v;
+                    break;
+                default:
+                    rv[offset] = (float)operation.eval(v, rv[offset]);
+            }
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != variables[j].getDomain()) {
+                    offset += strides[j];
+                    break;
+                }
+                subidx[j] = 0;
+                offset -= rewinds[j];
+            }
+        }
+    }
+
+}
@@ -42,7 +42,6 @@ import es.csic.iiia.ms.Variable;
 import gnu.trove.iterator.TLongIterator;
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.NoSuchElementException;
 
 /**
  * Cost Function implementation that stores the whole hypercube of values in
@@ -55,6 +54,11 @@ import java.util.NoSuchElementException;
  */
 public final class HypercubeCostFunction extends AbstractCostFunction implements Serializable {
 
+    /**
+     * Maximum number of elements that an hypercube can hold.
+     */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+
     /**
      * Hypercube values storage array.
      */
@@ -67,8 +71,9 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
      */
     protected HypercubeCostFunction(Variable[] variables) {
         super(variables);
-        if (size < 0) {
-            return;
+        if (size < 0 || size > MAX_SIZE) {
+            throw new UnsupportedOperationException("Hypercube cost functions can not hold "
+                    + "more than " + MAX_SIZE + " elements.");
         }
         values = new double[(int)size];
     }
@@ -99,11 +104,11 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
 
     /** {@inheritDoc} */
     @Override public TLongIterator iterator() {
-        return new HypercubeIterator();
+        return new DefaultIterator();
     }
 
     @Override public MasterIterator masterIterator() {
-        return new HypercubeMasterIterator();
+        return new DefaultMasterIterator();
     }
 
     @Override
@@ -114,105 +119,11 @@ public final class HypercubeCostFunction extends AbstractCostFunction implements
 
     /** {@inheritDoc} */
     public void setValue(long index, double value) {
-        if (index > (long)Integer.MAX_VALUE) {
-            throw new UnsupportedOperationException("Hypercube cost functions can not hold"
-                    + "more than " + Integer.MAX_VALUE + " elements.");
+        if (index > MAX_SIZE) {
+            throw new UnsupportedOperationException("Hypercube cost functions can not hold "
+                    + "more than " + MAX_SIZE + " elements.");
         }
         values[(int)index] = value;
     }
 
-    /**
-     * Implements the Iterator interface for an hypercube, allowing to iterate
-     * over its elements using the common java conventions.
-     */
-    protected class HypercubeIterator implements TLongIterator {
-        private long idx;
-        private double ng = getFactory().getSummarizeOperation().getNoGood();
-
-        public HypercubeIterator() {
-            idx = -1;
-            findNextGood();
-        }
-
-        private void findNextGood() {
-            idx++;
-            while (idx < size && getValue(idx) == ng) {
-                idx++;
-            }
-            if (idx == size) {
-                idx = -1;
-            }
-        }
-
-        @Override
-        public boolean hasNext() {
-            return idx >= 0 && idx < size;
-        }
-
-        @Override
-        public long next() {
-            if (idx < 0) {
-                throw new NoSuchElementException();
-            }
-
-            final long res = idx;
-            findNextGood();
-            return res;
-        }
-
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
-        }
-
-    }
-
-    /**
-     * Implements the Iterator interface for an hypercube, allowing to iterate
-     * over its elements using the common java conventions.
-     */
-    protected class HypercubeMasterIterator implements MasterIterator {
-        private final int[] subidx = new int[variables.length];
-        private long idx;
-
-        public HypercubeMasterIterator() {
-            idx = -1;
-            if (variables.length > 0) {
-                subidx[variables.length-1] = -1;
-            }
-        }
-
-        private void incIdx() {
-            idx++;
-            for (int i=variables.length-1; i>=0; i--) {
-                if (++subidx[i] != variables[i].getDomain()) {
-                    break;
-                } else {
-                    subidx[i] = 0;
-                }
-            }
-        }
-
-        @Override
-        public boolean hasNext() {
-            return idx >= -1 && idx < size-1;
-        }
-
-        @Override
-        public long next() {
-            incIdx();
-            return idx;
-        }
-
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("You can not remove elements from an hypercube.");
-        }
-
-        @Override
-        public int[] getIndices() {
-            return subidx;
-        }
-    }
-
 }
@@ -0,0 +1,428 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values as
+ * exact integer costs, as in weighted constraint satisfaction problems.
+ *
+ * Costs are saturated at a "top" value, which stands for forbidden
+ * configurations and is reported as the nogood value. Therefore, combining by
+ * addition and summarizing by minimization are performed exactly using
+ * saturating integer arithmetic, and two integer functions are only equal when
+ * all their costs are.
+ *
+ * Only integral values can be stored. Values within {@link #TOLERANCE} of an
+ * integer (as produced by floating point arithmetic) are rounded to it, and
+ * any other value is rejected.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class IntegerCostFunction extends AbstractCostFunction<IntegerCostFunction>
+        implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Hypercube costs storage array.
+     */
+    private int[] values;
+
+    /**
+     * Maximum distance to the nearest integer of the values that can be
+     * stored.
+     */
+    public static final double TOLERANCE = 1e-6;
+
+    /**
+     * Cost representing forbidden configurations.
+     */
+    private final int top;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     * @param top cost representing forbidden configurations.
+     */
+    protected IntegerCostFunction(Variable[] variables, int top) {
+        super(variables);
+        if (size < 0 || size > HypercubeCostFunction.MAX_SIZE) {
+            throw new UnsupportedOperationException("Hypercube cost functions can not hold "
+                    + "more than " + HypercubeCostFunction.MAX_SIZE + " elements.");
+        }
+        this.top = top;
+        values = new int[(int)size];
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     * @param top cost representing forbidden configurations.
+     */
+    protected IntegerCostFunction(CostFunction factor, int top) {
+        super(factor);
+        this.top = top;
+
+        if (factor instanceof IntegerCostFunction && ((IntegerCostFunction)factor).top == top) {
+            final IntegerCostFunction other = (IntegerCostFunction)factor;
+            values = other.values.clone();
+            return;
+        }
+
+        values = new int[(int)size];
+        for (int i=0; i<size; i++) {
+            values[i] = encode(factor.getValue(i));
+        }
+    }
+
+    /**
+     * Get the cost representing forbidden configurations.
+     *
+     * @return cost representing forbidden configurations.
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Get the integer costs of this function.
+     *
+     * @return integer costs of this function.
+     */
+    public int[] getIntValues() {
+        return values;
+    }
+
+    /**
+     * Get the value reported for the forbidden configurations.
+     */
+    private double getNoGood() {
+        return getFactory().getSummarizeOperation().getNoGood();
+    }
+
+    private double decode(int cost) {
+        return cost >= top ? getNoGood() : cost;
+    }
+
+    /**
+     * Converts the given value to its integer cost, saturating it at top.
+     *
+     * @throws IllegalArgumentException if the value is not integral.
+     */
+    private int encode(double value) {
+        final double noGood = getNoGood();
+        if (value == noGood) {
+            return top;
+        }
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Integer cost functions can not hold NaN values.");
+        }
+        final boolean saturate = noGood == Double.POSITIVE_INFINITY;
+        if (value >= top && saturate) {
+            return top;
+        }
+        if (value >= top || value < Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Value " + value + " is out of the range of "
+                    + "this integer cost function.");
+        }
+        final long cost = Math.round(value);
+        if (Math.abs(value - cost) > TOLERANCE) {
+            throw new IllegalArgumentException("Value " + value + " is not an integer cost.");
+        }
+        return (int)cost;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        final double noGood = getNoGood();
+        double[] result = new double[values.length];
+        for (int i=0; i<values.length; i++) {
+            result[i] = values[i] >= top ? noGood : values[i];
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        if (values.length != this.values.length) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        for (int i=0; i<values.length; i++) {
+            this.values[i] = encode(values[i]);
+        }
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        Arrays.fill(values, encode(initialValue));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        return decode(values[(int)index]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        values[(int)index] = encode(value);
+    }
+
+    /**
+     * Checks whether the given function can be operated cost-wise with this
+     * one.
+     */
+    private boolean isCompatible(CostFunction f) {
+        return f instanceof IntegerCostFunction
+                && ((IntegerCostFunction)f).top == top;
+    }
+
+    /**
+     * Checks whether the integer kernels implement the factory's operations.
+     */
+    private boolean isMinSum() {
+        final CostFunctionFactory factory = getFactory();
+        return factory.getSummarizeOperation() == Summarize.MIN
+                && factory.getCombineOperation() == Combine.SUM;
+    }
+
+    @Override
+    protected void _combine(CostFunction f2, CostFunction result) {
+        _combine(new CostFunction[]{this, f2}, result);
+    }
+
+    /**
+     * Combination kernel that adds the operands' costs, saturating at top.
+     */
+    @Override
+    protected void _combine(CostFunction[] fs, CostFunction result) {
+        boolean supported = isMinSum() && isCompatible(result);
+        for (int k=0; supported && k<fs.length; k++) {
+            supported = isCompatible(fs[k]);
+        }
+        if (!supported) {
+            super._combine(fs, result);
+            return;
+        }
+
+        final int[] rvalues = ((IntegerCostFunction)result).values;
+        final Variable[] rvars = result.getVariableSet().toArray(new Variable[0]);
+        final int len = rvars.length;
+        final int n = fs.length;
+
+        final int[][] operands = new int[n][];
+        final int[][] strides = new int[n][len];
+        final int[][] rewinds = new int[n][len];
+        for (int k=0; k<n; k++) {
+            final IntegerCostFunction f = (IntegerCostFunction)fs[k];
+            operands[k] = f.values;
+            final long[] s = f.getStrides(rvars);
+            for (int j=0; j<len; j++) {
+                strides[k][j] = (int)s[j];
+                rewinds[k][j] = (int)s[j] * (rvars[j].getDomain() - 1);
+            }
+        }
+
+        final int[] subidx = new int[len];
+        final int[] offsets = new int[n];
+        for (int i=0; i<rvalues.length; i++) {
+            long acc = 0;
+            for (int k=0; k<n && acc < top; k++) {
+                final int v = operands[k][offsets[k]];
+                // Forbidden configurations absorb any other cost
+                acc = v >= top ? top : acc + v;
+            }
+            rvalues[i] = acc >= top ? top : (int)Math.max(Integer.MIN_VALUE, acc);
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != rvars[j].getDomain()) {
+                    for (int k=0; k<n; k++) {
+                        offsets[k] += strides[k][j];
+                    }
+                    break;
+                }
+                subidx[j] = 0;
+                for (int k=0; k<n; k++) {
+                    offsets[k] -= rewinds[k][j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Summarization kernel that minimizes the costs directly, used when the
+     * result is an integer function over a subset of this function's
+     * variables.
+     */
+    @Override
+    protected void _summarize(CostFunction result) {
+        if (!isMinSum() || !isCompatible(result)
+                || !variableSet.containsAll(result.getVariableSet())) {
+            super._summarize(result);
+            return;
+        }
+
+        final int[] rvalues = ((IntegerCostFunction)result).values;
+        final int len = variables.length;
+        final long[] s = ((IntegerCostFunction)result).getStrides(variables);
+        final int[] strides = new int[len];
+        final int[] rewinds = new int[len];
+        for (int j=0; j<len; j++) {
+            strides[j] = (int)s[j];
+            rewinds[j] = (int)s[j] * (variables[j].getDomain() - 1);
+        }
+
+        final int[] subidx = new int[len];
+        int offset = 0;
+        for (int i=0; i<values.length; i++) {
+            if (values[i] < rvalues[offset]) {
+                rvalues[offset] = values[i];
+            }
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != variables[j].getDomain()) {
+                    offset += strides[j];
+                    break;
+                }
+                subidx[j] = 0;
+                offset -= rewinds[j];
+            }
+        }
+    }
+
+    /**
+     * Get the index of the optimal configuration, comparing the costs exactly.
+     * <p/>
+     * A random one is returned when there are multiple optimal configurations.
+     *
+     * @return index of the optimal configuration of this function.
+     */
+    @Override
+    protected long getOptimalConfigurationIndex(Random random) {
+        if (!isMinSum()) {
+            return super.getOptimalConfigurationIndex(random);
+        }
+
+        int optimal = top;
+        long best = -1;
+        int ties = 0;
+        for (int i=0; i<values.length; i++) {
+            final int v = values[i];
+            if (v < optimal) {
+                optimal = v;
+                best = i;
+                ties = 1;
+            } else if (v == optimal && v < top && random.nextInt(++ties) == 0) {
+                best = i;
+            }
+        }
+
+        if (best == -1) {
+            throw new RuntimeException("Unable to optimize this factor");
+        }
+
+        return best;
+    }
+
+    /**
+     * Indicates whether some other factor is "equal to" this one. Integer
+     * functions sharing the same top are compared exactly, disregarding the
+     * delta.
+     *
+     * @param other the reference object with which to compare.
+     * @param delta the maximum delta between factor values for which both
+     * numbers are still considered equal.
+     * @return  <code>true</code> if this object is the same as the obj
+     *          argument; <code>false</code> otherwise.
+     */
+    @Override
+    public boolean equals(CostFunction other, double delta) {
+        if (!isCompatible(other) || !variableSet.equals(other.getVariableSet())) {
+            return super.equals(other, delta);
+        }
+
+        final IntegerCostFunction o = (IntegerCostFunction)other;
+        if (Arrays.equals(variables, o.variables)) {
+            return Arrays.equals(values, o.values);
+        }
+
+        final long[] s = o.getStrides(variables);
+        final int len = variables.length;
+        final int[] subidx = new int[len];
+        long offset = 0;
+        for (int i=0; i<values.length; i++) {
+            if (values[i] != o.values[(int)offset]) {
+                return false;
+            }
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != variables[j].getDomain()) {
+                    offset += s[j];
+                    break;
+                }
+                subidx[j] = 0;
+                offset -= s[j] * (variables[j].getDomain() - 1);
+            }
+        }
+        return true;
+    }
+
+}
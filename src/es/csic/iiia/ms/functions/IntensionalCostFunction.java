@@ -0,0 +1,149 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import gnu.trove.iterator.TLongIterator;
+
+/**
+ * Cost Function implementation whose values are computed on demand by a
+ * {@link ValueOracle}, and hence never stored.
+ *
+ * Intensional functions are read-only. Combinations and summarizations stream
+ * over their configurations, so only their results are materialized (using
+ * the factory's representation).
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class IntensionalCostFunction extends AbstractCostFunction {
+
+    /**
+     * Oracle computing the values of this function.
+     */
+    private final ValueOracle oracle;
+
+    /**
+     * Scratch subindex array of each thread, so that reading a value by its
+     * linearized index does not allocate.
+     */
+    private final ThreadLocal<int[]> scratch = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[variables.length];
+        }
+    };
+
+    /**
+     * Creates a new intensional CostFunction.
+     *
+     * @param variables involved in this factor.
+     * @param oracle oracle computing the values of this function.
+     */
+    protected IntensionalCostFunction(Variable[] variables, ValueOracle oracle) {
+        super(variables);
+        this.oracle = oracle;
+    }
+
+    /**
+     * Get the oracle computing the values of this function.
+     *
+     * @return oracle of this function.
+     */
+    public ValueOracle getOracle() {
+        return oracle;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        double[] result = new double[(int)size];
+        MasterIterator it = masterIterator();
+        final int[] subidx = it.getIndices();
+        while (it.hasNext()) {
+            final long i = it.next();
+            result[(int)i] = oracle.getValue(subidx);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        throw new UnsupportedOperationException("Intensional cost functions are read-only.");
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        throw new UnsupportedOperationException("Intensional cost functions are read-only.");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        final int[] subidx = scratch.get();
+        indexToSubindex(index, subidx);
+        return oracle.getValue(subidx);
+    }
+
+    @Override
+    public double getValue(int[] index) {
+        return oracle.getValue(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        throw new UnsupportedOperationException("Intensional cost functions are read-only.");
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Solver that finds the k best joint configurations of a set of functions in
+ * a single elimination pass.
+ *
+ * Variables are eliminated in the order planned by {@link ContractionPlan},
+ * but each intermediate table keeps the k best values of every cell (along
+ * with the assignments of the already eliminated variables that yield them)
+ * instead of a single one. Once every variable has been eliminated, the
+ * remaining lists hold the k best configurations of the combination of all
+ * the functions, which is never built.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class KBestSolver {
+
+    private final Combine combine;
+
+    private final Comparator<Entry> order;
+
+    private final double nogood;
+
+    private final boolean absorbing;
+
+    private final int k;
+
+    private final List<Variable> variables = new ArrayList<>();
+
+    private final List<VariableAssignment> configurations = new ArrayList<>();
+
+    private final double[] values;
+
+    /**
+     * Finds the k best configurations of the combination of the given
+     * functions.
+     *
+     * @param factory factory whose operations to use.
+     * @param fs functions to combine.
+     * @param k number of configurations to find.
+     */
+    public KBestSolver(CostFunctionFactory factory, Collection<CostFunction> fs, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of configurations must be positive");
+        }
+        final Summarize summarize = factory.getSummarizeOperation();
+        if (summarize != Summarize.MAX && summarize != Summarize.MIN) {
+            throw new UnsupportedOperationException(
+                    "The k best configurations can only be found when maximizing or minimizing");
+        }
+        final int sign = summarize == Summarize.MAX ? -1 : 1;
+        order = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return sign * Double.compare(o1.value, o2.value);
+            }
+        };
+        combine = factory.getCombineOperation();
+        nogood = summarize.getNoGood();
+        absorbing = factory.isNoGoodAbsorbing();
+        this.k = k;
+
+        List<Table> pending = new ArrayList<>();
+        for (CostFunction f : fs) {
+            if (f == null) {
+                continue;
+            }
+            for (Variable v : f.getVariableSet()) {
+                if (!variables.contains(v)) {
+                    variables.add(v);
+                }
+            }
+            pending.add(new Table(f));
+        }
+
+        List<Variable> elimination = new ArrayList<>(
+                new ContractionPlan(factory, fs, new Variable[0]).getEliminationOrder());
+        for (Variable v : variables) {
+            if (!elimination.contains(v)) {
+                elimination.add(v);
+            }
+        }
+        for (Variable v : elimination) {
+            eliminate(pending, v);
+        }
+
+        // Only constant tables remain
+        Entry[] best = pending.isEmpty() ? new Entry[0] : combineCell(pending, new int[0]);
+        values = new double[best.length];
+        for (int i=0; i<best.length; i++) {
+            values[i] = best[i].value;
+            VariableAssignment map = new VariableAssignment(variables.size());
+            for (int j=0; j<variables.size() && best[i].assignment != null; j++) {
+                map.put(variables.get(j), best[i].assignment[j]);
+            }
+            configurations.add(map);
+        }
+    }
+
+    /**
+     * Get the best configurations found, ordered from best to worst.
+     *
+     * There may be less than k of them if the functions do not have as many
+     * valid configurations.
+     *
+     * @return best configurations.
+     */
+    public List<VariableAssignment> getConfigurations() {
+        return Collections.unmodifiableList(configurations);
+    }
+
+    /**
+     * Get the values of the best configurations found, in the same order as
+     * {@link #getConfigurations()}.
+     *
+     * @return values of the best configurations.
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Replaces the tables that involve the given variable by a single table
+     * holding the k best values of their combination for every value of the
+     * other variables.
+     */
+    private void eliminate(List<Table> pending, Variable v) {
+        List<Table> bucket = new ArrayList<>();
+        LinkedHashSet<Variable> scope = new LinkedHashSet<>();
+        for (int i=0; i<pending.size(); i++) {
+            if (pending.get(i).contains(v)) {
+                Collections.addAll(scope, pending.get(i).vars);
+                bucket.add(pending.remove(i--));
+            }
+        }
+        scope.remove(v);
+
+        final Table result = new Table(scope.toArray(new Variable[0]));
+        final int position = variables.indexOf(v);
+        final int[] context = new int[variables.size()];
+        final List<Entry> candidates = new ArrayList<>();
+        for (int r=0; r<result.cells.length; r++) {
+            result.decode(r, context);
+            candidates.clear();
+            for (int x=0; x<v.getDomain(); x++) {
+                context[position] = x;
+                for (Entry e : combineCell(bucket, context)) {
+                    candidates.add(e.extend(position, x, context.length));
+                }
+            }
+            result.cells[r] = select(candidates);
+        }
+        pending.add(result);
+    }
+
+    /**
+     * Combines the lists of the given tables at the cells selected by the
+     * context, keeping only the k best combinations.
+     */
+    private Entry[] combineCell(List<Table> tables, int[] context) {
+        Entry[] current = tables.get(0).get(context);
+        final List<Entry> candidates = new ArrayList<>();
+        for (int t=1; t<tables.size() && current.length > 0; t++) {
+            candidates.clear();
+            for (Entry e1 : current) {
+                for (Entry e2 : tables.get(t).get(context)) {
+                    candidates.add(new Entry(combine.eval(e1.value, e2.value),
+                            e1, e2, variables.size()));
+                }
+            }
+            current = select(candidates);
+        }
+        return current;
+    }
+
+    /**
+     * Selects the k best valid entries of the given candidates.
+     */
+    private Entry[] select(List<Entry> candidates) {
+        Collections.sort(candidates, order);
+        final int n = Math.min(k, candidates.size());
+        List<Entry> selected = new ArrayList<>(n);
+        for (Entry e : candidates) {
+            if (selected.size() == n) {
+                break;
+            }
+            if (!(absorbing && e.value == nogood)) {
+                selected.add(e);
+            }
+        }
+        return selected.toArray(new Entry[selected.size()]);
+    }
+
+    /**
+     * Value of a configuration along with the assignment of the eliminated
+     * variables that yields it.
+     */
+    private static final class Entry {
+
+        private final double value;
+
+        /** Value of each variable, or -1 for those not yet assigned. */
+        private final int[] assignment;
+
+        Entry(double value, int[] assignment) {
+            this.value = value;
+            this.assignment = assignment;
+        }
+
+        Entry(double value, Entry e1, Entry e2, int n) {
+            this.value = value;
+            this.assignment = new int[n];
+            for (int i=0; i<n; i++) {
+                final int a1 = e1.assignment == null ? -1 : e1.assignment[i];
+                final int a2 = e2.assignment == null ? -1 : e2.assignment[i];
+                assignment[i] = a1 != -1 ? a1 : a2;
+            }
+        }
+
+        Entry extend(int position, int value, int n) {
+            int[] extended;
+            if (assignment == null) {
+                extended = new int[n];
+                Arrays.fill(extended, -1);
+            } else {
+                extended = assignment.clone();
+            }
+            extended[position] = value;
+            return new Entry(this.value, extended);
+        }
+
+    }
+
+    /**
+     * Table holding a list of the k best entries for every configuration of
+     * its variables, linearized as in the cost functions.
+     */
+    private final class Table {
+
+        private final Variable[] vars;
+
+        private final int[] positions;
+
+        private final int[] strides;
+
+        private final Entry[][] cells;
+
+        Table(Variable[] vars) {
+            this.vars = vars;
+            positions = new int[vars.length];
+            strides = new int[vars.length];
+            long size = 1;
+            for (int i=vars.length-1; i>=0; i--) {
+                positions[i] = variables.indexOf(vars[i]);
+                strides[i] = (int)size;
+                size *= vars[i].getDomain();
+                if (size > Integer.MAX_VALUE) {
+                    throw new RuntimeException("Intermediate table too large");
+                }
+            }
+            cells = new Entry[(int)size][];
+        }
+
+        Table(CostFunction f) {
+            this(f.getVariableSet().toArray(new Variable[0]));
+            for (int i=0; i<cells.length; i++) {
+                final double value = f.getValue(i);
+                cells[i] = absorbing && value == nogood
+                        ? new Entry[0]
+                        : new Entry[]{new Entry(value, null)};
+            }
+        }
+
+        boolean contains(Variable v) {
+            for (Variable var : vars) {
+                if (var.equals(v)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Entry[] get(int[] context) {
+            int idx = 0;
+            for (int i=0; i<vars.length; i++) {
+                idx += strides[i] * context[positions[i]];
+            }
+            return cells[idx];
+        }
+
+        void decode(int idx, int[] context) {
+            for (int i=vars.length-1; i>=0; i--) {
+                context[positions[i]] = idx % vars[i].getDomain();
+                idx /= vars[i].getDomain();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,445 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.Arrays;
+import java.util.EnumMap;
+
+/**
+ * Element-wise kernels over contiguous (or constant-stride) runs of hypercube
+ * arrays.
+ *
+ * Combination and summarization kernels are specialized for each operation
+ * and stride pattern, and looked up once per operation (and operand) rather
+ * than dispatched for every element. Each one executes a tight loop without
+ * virtual calls, which the JIT compiler can unroll and vectorize.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+final class Kernels {
+
+    private Kernels() {}
+
+    /**
+     * Kernel that combines a run of source values into a run of destination
+     * values.
+     */
+    abstract static class CombineKernel {
+
+        /**
+         * Combines a run of values into the destination ones.
+         *
+         * @param out destination array.
+         * @param o first destination position.
+         * @param src source array.
+         * @param s first source position.
+         * @param stride distance between consecutive source values.
+         * @param len number of values to combine.
+         */
+        abstract void apply(double[] out, int o, double[] src, int s, int stride, int len);
+
+    }
+
+    /**
+     * Kernel that summarizes a contiguous run of values into an accumulator.
+     */
+    abstract static class ReduceKernel {
+
+        /**
+         * Summarizes a contiguous run of values into the given accumulator.
+         *
+         * @param src source array.
+         * @param from first position to summarize.
+         * @param to position after the last one to summarize.
+         * @param acc initial accumulator value.
+         * @return summarization of the accumulator and the run of values.
+         */
+        abstract double apply(double[] src, int from, int to, double acc);
+
+    }
+
+    /**
+     * Stride patterns with specialized kernels.
+     */
+    private static final int BROADCAST = 0, CONTIGUOUS = 1, STRIDED = 2;
+
+    /**
+     * Kernels that copy the source values, by stride pattern.
+     */
+    private static final CombineKernel[] COPY = new CombineKernel[]{
+        new CombineKernel() {
+            @Override
+            void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                Arrays.fill(out, o, o + len, src[s]);
+            }
+        },
+        new CombineKernel() {
+            @Override
+            void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                System.arraycopy(src, s, out, o, len);
+            }
+        },
+        new CombineKernel() {
+            @Override
+            void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                for (int t=0; t<len; t++) {
+                    out[o + t] = src[s + t*stride];
+                }
+            }
+        },
+    };
+
+    /**
+     * Specialized combination kernels, by operation and stride pattern.
+     */
+    private static final EnumMap<Combine, CombineKernel[]> COMBINE = new EnumMap<>(Combine.class);
+
+    /**
+     * Specialized summarization kernels, by operation.
+     */
+    private static final EnumMap<Summarize, ReduceKernel> REDUCE = new EnumMap<>(Summarize.class);
+
+    static {
+        COMBINE.put(Combine.SUM, new CombineKernel[]{
+            new CombineKernel() {
+                @Override
+                void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                    final double v = src[s];
+                    for (int t=0; t<len; t++) {
+                        out[o + t] += v;
+                    }
+                }
+            },
+            new CombineKernel() {
+                @Override
+                void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                    for (int t=0; t<len; t++) {
+                        out[o + t] += src[s + t];
+                    }
+                }
+            },
+            new CombineKernel() {
+                @Override
+                void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                    for (int t=0; t<len; t++) {
+                        out[o + t] += src[s + t*stride];
+                    }
+                }
+            },
+        });
+
+        COMBINE.put(Combine.PRODUCT, new CombineKernel[]{
+            new CombineKernel() {
+                @Override
+                void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                    final double v = src[s];
+                    for (int t=0; t<len; t++) {
+                        out[o + t] *= v;
+                    }
+                }
+            },
+            new CombineKernel() {
+                @Override
+                void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                    for (int t=0; t<len; t++) {
+                        out[o + t] *= src[s + t];
+                    }
+                }
+            },
+            new CombineKernel() {
+                @Override
+                void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                    for (int t=0; t<len; t++) {
+                        out[o + t] *= src[s + t*stride];
+                    }
+                }
+            },
+        });
+
+        REDUCE.put(Summarize.MAX, new ReduceKernel() {
+            @Override
+            double apply(double[] src, int from, int to, double acc) {
+                for (int i=from; i<to; i++) {
+                    acc = Math.max(acc, src[i]);
+                }
+                return acc;
+            }
+        });
+
+        REDUCE.put(Summarize.MIN, new ReduceKernel() {
+            @Override
+            double apply(double[] src, int from, int to, double acc) {
+                for (int i=from; i<to; i++) {
+                    acc = Math.min(acc, src[i]);
+                }
+                return acc;
+            }
+        });
+
+        // Streaming log-sum-exp, scaling the partial sum by the running maximum
+        REDUCE.put(Summarize.LOGSUMEXP, new ReduceKernel() {
+            @Override
+            double apply(double[] src, int from, int to, double acc) {
+                double max = acc;
+                double sum = 1;
+                for (int i=from; i<to; i++) {
+                    final double v = src[i];
+                    if (v == Double.NEGATIVE_INFINITY) {
+                        continue;
+                    }
+                    if (v == Double.POSITIVE_INFINITY || max == Double.POSITIVE_INFINITY) {
+                        return Double.POSITIVE_INFINITY;
+                    }
+                    if (v <= max) {
+                        sum += Math.exp(v - max);
+                    } else if (max == Double.NEGATIVE_INFINITY) {
+                        max = v;
+                    } else {
+                        sum = sum * Math.exp(max - v) + 1;
+                        max = v;
+                    }
+                }
+                return max == Double.NEGATIVE_INFINITY ? max : max + Math.log(sum);
+            }
+        });
+
+        REDUCE.put(Summarize.SUM, new ReduceKernel() {
+            @Override
+            double apply(double[] src, int from, int to, double acc) {
+                for (int i=from; i<to; i++) {
+                    acc += src[i];
+                }
+                return acc;
+            }
+        });
+    }
+
+    private static int getPattern(int stride) {
+        return stride == 0 ? BROADCAST : (stride == 1 ? CONTIGUOUS : STRIDED);
+    }
+
+    /**
+     * Get the kernel that copies runs of values with the given stride.
+     *
+     * @param stride distance between consecutive source values.
+     * @return copy kernel.
+     */
+    static CombineKernel getCopyKernel(int stride) {
+        return COPY[getPattern(stride)];
+    }
+
+    /**
+     * Get the kernel that combines runs of values with the given stride,
+     * resolving the operation and the stride pattern once for all the runs.
+     *
+     * @param operation combine operation.
+     * @param stride distance between consecutive source values.
+     * @return combination kernel.
+     */
+    static CombineKernel getCombineKernel(final Combine operation, int stride) {
+        final CombineKernel[] kernels = COMBINE.get(operation);
+        if (kernels != null) {
+            return kernels[getPattern(stride)];
+        }
+        return new CombineKernel() {
+            @Override
+            void apply(double[] out, int o, double[] src, int s, int stride, int len) {
+                for (int t=0; t<len; t++) {
+                    out[o + t] = operation.eval(out[o + t], src[s + t*stride]);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the kernel that summarizes runs of values.
+     *
+     * @param operation summarize operation.
+     * @return summarization kernel.
+     */
+    static ReduceKernel getReduceKernel(final Summarize operation) {
+        final ReduceKernel kernel = REDUCE.get(operation);
+        if (kernel != null) {
+            return kernel;
+        }
+        return new ReduceKernel() {
+            @Override
+            double apply(double[] src, int from, int to, double acc) {
+                for (int i=from; i<to; i++) {
+                    acc = operation.eval(src[i], acc);
+                }
+                return acc;
+            }
+        };
+    }
+
+    /**
+     * Checks whether a contiguous run of values contains any NaN.
+     *
+     * @param values array to check.
+     * @param from first position to check.
+     * @param to position after the last one to check.
+     * @return true if any of the values is NaN.
+     */
+    static boolean hasNaN(double[] values, int from, int to) {
+        boolean nan = false;
+        for (int i=from; i<to; i++) {
+            nan |= values[i] != values[i];
+        }
+        return nan;
+    }
+
+    /**
+     * Negates all the values of an array, except the nogoods.
+     *
+     * @param operation combine operation.
+     * @param noGood nogood value.
+     * @param src source array.
+     * @param out destination array.
+     */
+    static void negate(Combine operation, double noGood, double[] src, double[] out) {
+        for (int i=0; i<src.length; i++) {
+            final double v = src[i];
+            out[i] = v == noGood ? v : operation.negate(v);
+        }
+    }
+
+    /**
+     * Adds all the values of an array, except the nogoods.
+     *
+     * @param noGood nogood value.
+     * @param src source array.
+     * @return sum of the non-nogood values.
+     */
+    static double sum(double noGood, double[] src) {
+        return sum(noGood, src, 0, src.length);
+    }
+
+    /**
+     * Adds a contiguous run of values of an array, except the nogoods.
+     *
+     * @param noGood nogood value.
+     * @param src source array.
+     * @param from first position to add.
+     * @param to position after the last one to add.
+     * @return sum of the non-nogood values in the run.
+     */
+    static double sum(double noGood, double[] src, int from, int to) {
+        double sum = 0;
+        for (int i=from; i<to; i++) {
+            final double v = src[i];
+            sum += v == noGood ? 0 : v;
+        }
+        return sum;
+    }
+
+    /**
+     * Applies <code>v * factor + shift</code> to all the values of an array,
+     * except the nogoods.
+     *
+     * @param noGood nogood value.
+     * @param src source array.
+     * @param out destination array.
+     * @param factor value to multiply by.
+     * @param shift value to add.
+     */
+    static void scale(double noGood, double[] src, double[] out, double factor, double shift) {
+        for (int i=0; i<src.length; i++) {
+            final double v = src[i];
+            out[i] = v == noGood ? v : v * factor + shift;
+        }
+    }
+
+    /**
+     * Computes the maximum absolute difference between a contiguous run of
+     * values and a run of values with the given stride.
+     *
+     * Equal values (including equal infinities) do not differ, and NaNs
+     * propagate to the result.
+     *
+     * @param a first array.
+     * @param ao first position of the first array.
+     * @param b second array.
+     * @param bo first position of the second array.
+     * @param stride distance between consecutive values of the second array.
+     * @param len number of values to compare.
+     * @param acc initial maximum difference.
+     * @return maximum of the accumulator and the differences in the runs.
+     */
+    static double maxAbsDifference(double[] a, int ao, double[] b, int bo, int stride,
+            int len, double acc) {
+        for (int t=0; t<len; t++) {
+            final double x = a[ao + t], y = b[bo + t*stride];
+            if (x != y) {
+                acc = Math.max(acc, Math.abs(x - y));
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Computes the sum of absolute differences between a contiguous run of
+     * values and a run of values with the given stride.
+     *
+     * Equal values (including equal infinities) do not differ, and NaNs
+     * propagate to the result.
+     *
+     * @param a first array.
+     * @param ao first position of the first array.
+     * @param b second array.
+     * @param bo first position of the second array.
+     * @param stride distance between consecutive values of the second array.
+     * @param len number of values to compare.
+     * @param acc initial sum of differences.
+     * @return sum of the accumulator and the differences in the runs.
+     */
+    static double l1Difference(double[] a, int ao, double[] b, int bo, int stride,
+            int len, double acc) {
+        for (int t=0; t<len; t++) {
+            final double x = a[ao + t], y = b[bo + t*stride];
+            if (x != y) {
+                acc += Math.abs(x - y);
+            }
+        }
+        return acc;
+    }
+
+}
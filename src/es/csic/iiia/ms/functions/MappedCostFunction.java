@@ -0,0 +1,172 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values in a
+ * memory-mapped scratch file. Therefore, it can hold functions larger than the
+ * available memory, paging their values in and out sequentially when they are
+ * streamed through.
+ *
+ * The scratch file is deleted when the function is {@link #release()}d, or
+ * when it is garbage collected if it was never released.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class MappedCostFunction extends AbstractChunkedCostFunction {
+
+    /**
+     * Scratch file backing this function.
+     */
+    private File file;
+
+    /**
+     * Channel to the scratch file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     * @param directory where to create the scratch file, or <code>null</code>
+     *        to use the default temporary-file directory.
+     */
+    protected MappedCostFunction(Variable[] variables, File directory) {
+        super(variables, DEFAULT_CHUNK_BITS);
+        open(directory);
+        map();
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     * @param directory where to create the scratch file, or <code>null</code>
+     *        to use the default temporary-file directory.
+     */
+    protected MappedCostFunction(CostFunction factor, File directory) {
+        super(factor, getChunkBits(factor));
+        open(directory);
+        map();
+        copyValues(factor);
+    }
+
+    private void open(File directory) {
+        try {
+            file = File.createTempFile("costfunction", ".bin", directory);
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        } catch (IOException e) {
+            release();
+            throw new RuntimeException("Unable to create the scratch file.", e);
+        }
+    }
+
+    private void map() {
+        try {
+            allocate();
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    protected DoubleBuffer allocateChunk(long offset, int length) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, offset * 8, length * 8L)
+                    .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to map the scratch file " + file + ".", e);
+        }
+    }
+
+    /**
+     * Get the scratch file backing this function.
+     *
+     * @return scratch file, or <code>null</code> if it has been released.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes and deletes the scratch file backing this function.
+     *
+     * The mapped memory itself is unmapped when the function is garbage
+     * collected.
+     */
+    @Override
+    public void release() {
+        chunks = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
+            }
+            channel = null;
+        }
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+    /**
+     * Deletes the scratch file of functions that have not been released.
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            release();
+        } finally {
+            super.finalize();
+        }
+    }
+
+}
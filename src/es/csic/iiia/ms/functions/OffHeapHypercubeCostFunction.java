@@ -0,0 +1,107 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values in
+ * chunks of native (off-heap) memory, addressed by long indices. Therefore,
+ * it can hold functions of more than {@link HypercubeCostFunction#MAX_SIZE}
+ * elements, and its values are never scanned by the garbage collector.
+ *
+ * Native memory is only freed by the garbage collector, once the buffers are
+ * unreachable. Releasing the function drops its buffers, so that they can be
+ * collected even if the function itself is still referenced.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class OffHeapHypercubeCostFunction extends AbstractChunkedCostFunction {
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     */
+    protected OffHeapHypercubeCostFunction(Variable[] variables) {
+        this(variables, DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * Creates a new CostFunction, initialized to zeros, using chunks of
+     * <code>2^chunkBits</code> elements.
+     *
+     * @param variables involved in this factor.
+     * @param chunkBits number of bits used to address the elements of a chunk.
+     */
+    OffHeapHypercubeCostFunction(Variable[] variables, int chunkBits) {
+        super(variables, chunkBits);
+        allocate();
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected OffHeapHypercubeCostFunction(CostFunction factor) {
+        super(factor, getChunkBits(factor));
+        allocate();
+        copyValues(factor);
+    }
+
+    @Override
+    protected DoubleBuffer allocateChunk(long offset, int length) {
+        return ByteBuffer.allocateDirect(length * 8)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    /**
+     * Drops the buffers of this function, leaving their native memory to the
+     * garbage collector.
+     */
+    @Override
+    public void release() {
+        chunks = null;
+    }
+
+}
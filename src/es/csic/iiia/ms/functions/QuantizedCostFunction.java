@@ -0,0 +1,499 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import gnu.trove.iterator.TLongIterator;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cost Function implementation that stores the whole hypercube of values as
+ * 8 or 16 bit unsigned codes, linearly mapped to the range of values of the
+ * function (<code>value = offset + scale * code</code>). The highest code is
+ * reserved to represent the nogood value. Therefore, this implementation
+ * takes 4-8 times less memory than an {@link HypercubeCostFunction}, at the
+ * expense of precision.
+ *
+ * Setting a value out of the current range widens the range and requantizes
+ * all the stored codes. Maximizing (or minimizing) summarizations, combinations
+ * by addition and the optimal configuration search work directly over the
+ * codes.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class QuantizedCostFunction extends AbstractCostFunction<QuantizedCostFunction>
+        implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Hypercube codes storage array (when using 8 bit codes).
+     */
+    private byte[] bytes;
+
+    /**
+     * Hypercube codes storage array (when using 16 bit codes).
+     */
+    private short[] shorts;
+
+    /**
+     * Number of bits of each code.
+     */
+    private final int bits;
+
+    /**
+     * Code reserved to represent the nogood value.
+     */
+    private final int noGoodCode;
+
+    /**
+     * Value represented by the reserved nogood code.
+     */
+    private final double noGood;
+
+    /**
+     * Value represented by code 0.
+     */
+    private double offset;
+
+    /**
+     * Difference between the values represented by consecutive codes.
+     */
+    private double scale;
+
+    /**
+     * Creates a new CostFunction, initialized to zeros.
+     *
+     * @param variables involved in this factor.
+     * @param bits number of bits of each code (8 or 16).
+     * @param noGood value represented by the reserved nogood code.
+     */
+    protected QuantizedCostFunction(Variable[] variables, int bits, double noGood) {
+        super(variables);
+        if (size < 0 || size > HypercubeCostFunction.MAX_SIZE) {
+            throw new UnsupportedOperationException("Hypercube cost functions can not hold "
+                    + "more than " + HypercubeCostFunction.MAX_SIZE + " elements.");
+        }
+        this.bits = bits;
+        this.noGood = noGood;
+        noGoodCode = (1 << bits) - 1;
+        allocate();
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     * @param bits number of bits of each code (8 or 16).
+     */
+    protected QuantizedCostFunction(CostFunction factor, int bits) {
+        super(factor);
+        this.bits = bits;
+        noGoodCode = (1 << bits) - 1;
+
+        if (factor instanceof QuantizedCostFunction
+                && ((QuantizedCostFunction)factor).bits == bits) {
+            final QuantizedCostFunction other = (QuantizedCostFunction)factor;
+            noGood = other.noGood;
+            offset = other.offset;
+            scale = other.scale;
+            bytes = other.bytes == null ? null : other.bytes.clone();
+            shorts = other.shorts == null ? null : other.shorts.clone();
+            return;
+        }
+
+        noGood = getFactory().getSummarizeOperation().getNoGood();
+        allocate();
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (long i=0; i<size; i++) {
+            final double v = factor.getValue(i);
+            if (v != noGood) {
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+        }
+        setRange(lo, hi);
+        for (long i=0; i<size; i++) {
+            setCode((int)i, encode(factor.getValue(i)));
+        }
+    }
+
+    private void allocate() {
+        if (bits == 8) {
+            bytes = new byte[(int)size];
+        } else if (bits == 16) {
+            shorts = new short[(int)size];
+        } else {
+            throw new IllegalArgumentException("Unsupported number of bits per code: " + bits);
+        }
+    }
+
+    /**
+     * Get the number of bits of each code.
+     *
+     * @return number of bits of each code.
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    private int getCode(int index) {
+        return bytes != null ? bytes[index] & 0xFF : shorts[index] & 0xFFFF;
+    }
+
+    private void setCode(int index, int code) {
+        if (bytes != null) {
+            bytes[index] = (byte)code;
+        } else {
+            shorts[index] = (short)code;
+        }
+    }
+
+    private double decode(int code) {
+        return code == noGoodCode ? noGood : offset + scale * code;
+    }
+
+    private int encode(double value) {
+        if (value == noGood) {
+            return noGoodCode;
+        }
+        if (scale == 0) {
+            return 0;
+        }
+        final long code = Math.round((value - offset) / scale);
+        return (int)Math.max(0, Math.min(noGoodCode - 1, code));
+    }
+
+    /**
+     * Sets the range of values represented by the codes, without
+     * requantizing the stored codes.
+     */
+    private void setRange(double lo, double hi) {
+        if (lo > hi) {
+            // There are no values other than nogoods
+            offset = 0;
+            scale = 0;
+            return;
+        }
+        if (Double.isInfinite(lo) || Double.isInfinite(hi)
+                || Double.isNaN(lo) || Double.isNaN(hi)) {
+            throw new IllegalArgumentException("Quantized cost functions can only hold "
+                    + "finite values (besides the nogood).");
+        }
+        offset = lo;
+        scale = (hi - lo) / (noGoodCode - 1);
+    }
+
+    /**
+     * Widens the range of values represented by the codes so that it includes
+     * the given value, requantizing all the stored codes.
+     */
+    private void widen(double value) {
+        // Leave some margin to amortize the requantizations
+        double lo = Math.min(offset, value);
+        double hi = Math.max(offset + scale * (noGoodCode - 1), value);
+        final double margin = (hi - lo) / 4;
+        if (value < offset) {
+            lo -= margin;
+        } else {
+            hi += margin;
+        }
+
+        final double oldOffset = offset, oldScale = scale;
+        setRange(lo, hi);
+        for (int i=0; i<size; i++) {
+            final int code = getCode(i);
+            if (code != noGoodCode) {
+                setCode(i, encode(oldOffset + oldScale * code));
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        double[] result = new double[(int)size];
+        for (int i=0; i<result.length; i++) {
+            result[i] = decode(getCode(i));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (double v : values) {
+            if (v != noGood) {
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+        }
+        setRange(lo, hi);
+        for (int i=0; i<values.length; i++) {
+            setCode(i, encode(values[i]));
+        }
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        if (initialValue == noGood) {
+            setRange(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        } else {
+            setRange(initialValue, initialValue);
+        }
+        final int code = encode(initialValue);
+        if (bytes != null) {
+            Arrays.fill(bytes, (byte)code);
+        } else {
+            Arrays.fill(shorts, (short)code);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        return decode(getCode((int)index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        if (value != noGood && (value < offset || value > offset + scale * (noGoodCode - 1))) {
+            widen(value);
+        }
+        setCode((int)index, encode(value));
+    }
+
+    /**
+     * Checks whether the given function can be operated code-wise with this
+     * one.
+     */
+    private boolean isCompatible(CostFunction f) {
+        return f instanceof QuantizedCostFunction
+                && ((QuantizedCostFunction)f).noGood == noGood;
+    }
+
+    @Override
+    protected void _combine(CostFunction f2, CostFunction result) {
+        _combine(new CostFunction[]{this, f2}, result);
+    }
+
+    /**
+     * Combination kernel that adds the operands' codes, which is possible
+     * when combining by addition and nogoods absorb any other value.
+     */
+    @Override
+    protected void _combine(CostFunction[] fs, CostFunction result) {
+        final CostFunctionFactory factory = getFactory();
+        boolean supported = isCompatible(result) && factory.isNoGoodAbsorbing()
+                && factory.getCombineOperation() == Combine.SUM;
+        for (int k=0; supported && k<fs.length; k++) {
+            supported = isCompatible(fs[k]);
+        }
+        if (!supported) {
+            super._combine(fs, result);
+            return;
+        }
+
+        final QuantizedCostFunction r = (QuantizedCostFunction)result;
+        final Variable[] rvars = r.variables;
+        final int len = rvars.length;
+        final int n = fs.length;
+
+        // The result's range is the sum of the operands' ranges
+        final QuantizedCostFunction[] qs = new QuantizedCostFunction[n];
+        final int[][] strides = new int[n][len];
+        final int[][] rewinds = new int[n][len];
+        double lo = 0, hi = 0;
+        for (int k=0; k<n; k++) {
+            qs[k] = (QuantizedCostFunction)fs[k];
+            lo += qs[k].offset;
+            hi += qs[k].offset + qs[k].scale * (qs[k].noGoodCode - 1);
+            final long[] s = qs[k].getStrides(rvars);
+            for (int j=0; j<len; j++) {
+                strides[k][j] = (int)s[j];
+                rewinds[k][j] = (int)s[j] * (rvars[j].getDomain() - 1);
+            }
+        }
+        r.setRange(lo, hi);
+        final double inverse = r.scale == 0 ? 0 : 1 / r.scale;
+
+        final int[] subidx = new int[len];
+        final int[] offsets = new int[n];
+        for (int i=0; i<r.size; i++) {
+            int code = 0;
+            double acc = 0;
+            for (int k=0; k<n; k++) {
+                final int c = qs[k].getCode(offsets[k]);
+                if (c == qs[k].noGoodCode) {
+                    code = r.noGoodCode;
+                    break;
+                }
+                acc += qs[k].scale * c;
+            }
+            if (code != r.noGoodCode) {
+                code = (int)Math.min(r.noGoodCode - 1, Math.round(acc * inverse));
+            }
+            r.setCode(i, code);
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != rvars[j].getDomain()) {
+                    for (int k=0; k<n; k++) {
+                        offsets[k] += strides[k][j];
+                    }
+                    break;
+                }
+                subidx[j] = 0;
+                for (int k=0; k<n; k++) {
+                    offsets[k] -= rewinds[k][j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Summarization kernel that maximizes (or minimizes) the codes directly,
+     * used when the result is a quantized function over a subset of this
+     * function's variables.
+     */
+    @Override
+    protected void _summarize(CostFunction result) {
+        final Summarize operation = getFactory().getSummarizeOperation();
+        if ((operation != Summarize.MAX && operation != Summarize.MIN) || !isCompatible(result)
+                || ((QuantizedCostFunction)result).bits != bits
+                || !variableSet.containsAll(result.getVariableSet())) {
+            super._summarize(result);
+            return;
+        }
+
+        final QuantizedCostFunction r = (QuantizedCostFunction)result;
+        r.offset = offset;
+        r.scale = scale;
+
+        final boolean max = operation == Summarize.MAX;
+        final int len = variables.length;
+        final long[] s = r.getStrides(variables);
+        final int[] strides = new int[len];
+        final int[] rewinds = new int[len];
+        for (int j=0; j<len; j++) {
+            strides[j] = (int)s[j];
+            rewinds[j] = (int)s[j] * (variables[j].getDomain() - 1);
+        }
+
+        final int[] subidx = new int[len];
+        int offset = 0;
+        for (int i=0; i<size; i++) {
+            final int c = getCode(i);
+            if (c != noGoodCode) {
+                final int rc = r.getCode(offset);
+                if (rc == noGoodCode || (max ? c > rc : c < rc)) {
+                    r.setCode(offset, c);
+                }
+            }
+
+            for (int j=len-1; j>=0; j--) {
+                if (++subidx[j] != variables[j].getDomain()) {
+                    offset += strides[j];
+                    break;
+                }
+                subidx[j] = 0;
+                offset -= rewinds[j];
+            }
+        }
+    }
+
+    /**
+     * Get the index of the optimal configuration, comparing the codes exactly.
+     * <p/>
+     * A random one is returned when there are multiple optimal configurations.
+     *
+     * @return index of the optimal configuration of this function.
+     */
+    @Override
+    protected long getOptimalConfigurationIndex(Random random) {
+        final Summarize operation = getFactory().getSummarizeOperation();
+        if (operation != Summarize.MAX && operation != Summarize.MIN) {
+            return super.getOptimalConfigurationIndex(random);
+        }
+
+        final boolean max = operation == Summarize.MAX;
+        int optimal = noGoodCode;
+        long best = -1;
+        int ties = 0;
+        for (int i=0; i<size; i++) {
+            final int c = getCode(i);
+            if (c == noGoodCode) {
+                continue;
+            }
+            if (optimal == noGoodCode || (max ? c > optimal : c < optimal)) {
+                optimal = c;
+                best = i;
+                ties = 1;
+            } else if (c == optimal && random.nextInt(++ties) == 0) {
+                best = i;
+            }
+        }
+
+        if (best == -1) {
+            throw new RuntimeException("Unable to optimize this factor");
+        }
+
+        return best;
+    }
+
+}
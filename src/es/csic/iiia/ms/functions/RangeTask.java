@@ -0,0 +1,106 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task that processes a range of result elements, splitting it in
+ * halves until the pieces are small enough.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+final class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Work to perform over a range of result elements.
+     */
+    interface Body {
+
+        /**
+         * Processes the result elements in the given range.
+         *
+         * @param from first element to process.
+         * @param to element after the last one to process.
+         */
+        void run(long from, long to);
+
+    }
+
+    private final Body body;
+
+    private final long from;
+
+    private final long to;
+
+    private final long grain;
+
+    private final long unit;
+
+    /**
+     * Creates a new task.
+     *
+     * @param body work to perform.
+     * @param from first element to process.
+     * @param to element after the last one to process.
+     * @param grain number of elements below which the range is not split.
+     * @param unit number of elements that must be processed together (the
+     *             range is only split at multiples of it).
+     */
+    RangeTask(Body body, long from, long to, long grain, long unit) {
+        this.body = body;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+        this.unit = unit;
+    }
+
+    @Override
+    protected void compute() {
+        final long mid = from + (to - from) / unit / 2 * unit;
+        if (to - from <= grain || mid == from) {
+            body.run(from, to);
+            return;
+        }
+        invokeAll(new RangeTask(body, from, mid, grain, unit),
+                new RangeTask(body, mid, to, grain, unit));
+    }
+
+}
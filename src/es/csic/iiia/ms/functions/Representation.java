@@ -0,0 +1,115 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+/**
+ * Available cost function representations.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public enum Representation {
+    /**
+     * Store the whole hypercube of values.
+     *
+     * @see HypercubeCostFunction
+     */
+    DENSE,
+    /**
+     * Store only the non-nogood values.
+     *
+     * @see SparseCostFunction
+     */
+    SPARSE,
+    /**
+     * Store the whole hypercube of values in native memory, addressing it by
+     * long indices.
+     *
+     * Dense functions too large for an {@link HypercubeCostFunction} are
+     * always stored this way.
+     *
+     * @see OffHeapHypercubeCostFunction
+     */
+    OFFHEAP,
+    /**
+     * Store the whole hypercube of values in a memory-mapped scratch file.
+     *
+     * Dense functions larger than the factory's spill threshold are always
+     * stored this way.
+     *
+     * @see MappedCostFunction
+     * @see CostFunctionFactory#setSpillThreshold(long)
+     */
+    MAPPED,
+    /**
+     * Store the whole hypercube of values in single precision.
+     *
+     * @see FloatHypercubeCostFunction
+     */
+    FLOAT,
+    /**
+     * Store the whole hypercube of values as 8 or 16 bit fixed-point codes.
+     *
+     * @see QuantizedCostFunction
+     * @see CostFunctionFactory#setQuantizationBits(int)
+     */
+    QUANTIZED,
+    /**
+     * Store the whole hypercube of values as exact integer costs, saturated
+     * at a top value. It can only be used without normalization.
+     *
+     * @see IntegerCostFunction
+     * @see CostFunctionFactory#setTop(int)
+     */
+    INTEGER,
+    /**
+     * Store the values in an algebraic decision diagram, which is compact
+     * for functions with large constant regions.
+     *
+     * @see AddCostFunction
+     */
+    ADD,
+    /**
+     * Choose between {@link #DENSE} and {@link #SPARSE} for every function,
+     * depending on its (expected) fraction of non-nogood elements.
+     *
+     * @see CostFunctionFactory#setThresholds(double, double)
+     */
+    ADAPTIVE
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import gnu.trove.iterator.TLongIterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of another function with some of its variables fixed.
+ *
+ * Slices never copy the values of the sliced function. Instead, they locate
+ * each of their elements in it through the offset of the fixed variables and
+ * the strides of the remaining ones, so building them takes no time and they
+ * always reflect the current values of the sliced function.
+ *
+ * Sequential reads through {@link #iterator()} or {@link #getValues()} step
+ * through the sliced function with an odometer over the stored strides.
+ * Random reads through {@link #getValue(long)} must instead decompose the
+ * index for every variable, so slices that are read element by element many
+ * times should be materialized with {@link CostFunction#reduce} instead.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class SliceCostFunction extends AbstractCostFunction {
+
+    /**
+     * Sliced function.
+     */
+    private final CostFunction parent;
+
+    /**
+     * Index of the first element of this slice in the sliced function.
+     */
+    private final long base;
+
+    /**
+     * Stride of each of this slice's variables in the sliced function.
+     */
+    private final long[] strides;
+
+    /**
+     * Creates a new slice of the given function.
+     *
+     * @param parent function to slice.
+     * @param mapping variable-value pairs to fix.
+     */
+    protected SliceCostFunction(AbstractCostFunction<?> parent, VariableAssignment mapping) {
+        super(remaining(parent, mapping));
+        this.parent = parent;
+        setFactory(parent.getFactory());
+        base = parent.getVariableSet().isEmpty() ? 0 : parent.getIndex(mapping);
+        strides = parent.getStrides(variables);
+    }
+
+    private static Variable[] remaining(CostFunction parent, VariableAssignment mapping) {
+        LinkedHashSet<Variable> vars = new LinkedHashSet<Variable>(parent.getVariableSet());
+        if (mapping != null) {
+            vars.removeAll(mapping.keySet());
+        }
+        return vars.toArray(new Variable[0]);
+    }
+
+    /**
+     * Get the sliced function.
+     *
+     * @return sliced function.
+     */
+    public CostFunction getParent() {
+        return parent;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        if (size < 0 || size > HypercubeCostFunction.MAX_SIZE) {
+            throw new UnsupportedOperationException("Unable to expand a slice"
+                    + " of more than " + HypercubeCostFunction.MAX_SIZE + " elements.");
+        }
+
+        final double[] result = new double[(int)size];
+        final int[] subidx = new int[variables.length];
+        long offset = base;
+        for (int i=0; i<result.length; i++) {
+            result[i] = parent.getValue(offset);
+            offset = step(subidx, offset);
+        }
+        return result;
+    }
+
+    /**
+     * Advances the given subindex to the next element of this slice.
+     *
+     * @param subidx subindex to advance.
+     * @param offset index of the current element in the sliced function.
+     * @return index of the next element in the sliced function.
+     */
+    private long step(int[] subidx, long offset) {
+        for (int i=variables.length-1; i>=0; i--) {
+            final int domain = variables[i].getDomain();
+            if (++subidx[i] != domain) {
+                return offset + strides[i];
+            }
+            subidx[i] = 0;
+            offset -= strides[i] * (domain - 1);
+        }
+        return offset;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        throw new UnsupportedOperationException("Slices are read-only.");
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        throw new UnsupportedOperationException("Slices are read-only.");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return new SliceIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return new DefaultMasterIterator();
+    }
+
+    @Override
+    public double getValue(long index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        long offset = base;
+        for (int i=variables.length-1; i>=0; i--) {
+            final int domain = variables[i].getDomain();
+            offset += strides[i] * (index % domain);
+            index /= domain;
+        }
+        return parent.getValue(offset);
+    }
+
+    @Override
+    public double getValue(int[] index) {
+        if (index.length != variables.length) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+        long offset = base;
+        for (int i=0; i<variables.length; i++) {
+            offset += strides[i] * index[i];
+        }
+        return parent.getValue(offset);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        throw new UnsupportedOperationException("Slices are read-only.");
+    }
+
+    /**
+     * Implements the Iterator interface over the non-nogood elements of this
+     * slice, following the elements of the sliced function by their strides.
+     */
+    private class SliceIterator implements TLongIterator {
+        private final double ng = getFactory().getSummarizeOperation().getNoGood();
+        private final int[] subidx = new int[variables.length];
+        private long offset = base;
+        private long idx = -1;
+
+        public SliceIterator() {
+            findNextGood();
+        }
+
+        private void findNextGood() {
+            if (idx >= 0) {
+                offset = step(subidx, offset);
+            }
+            idx++;
+            while (idx < size && parent.getValue(offset) == ng) {
+                offset = step(subidx, offset);
+                idx++;
+            }
+            if (idx == size) {
+                idx = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx >= 0;
+        }
+
+        @Override
+        public long next() {
+            if (idx < 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long res = idx;
+            findNextGood();
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Slices are read-only.");
+        }
+
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.Arrays;
+
+/**
+ * Potential whose entries are kept sorted from best to worst for every value
+ * of every variable, so that its max-marginals (or min-marginals) can be
+ * computed by branch and bound.
+ *
+ * When computing the marginal of a variable for some value, the entries with
+ * that value are visited in order. The value of each entry plus the best
+ * value of every other message bounds what the remaining entries can
+ * achieve, so the walk stops as soon as that bound can not improve the best
+ * combination found. On peaked tables this prunes most of the entries.
+ *
+ * The entries are sorted for the summarize operation set when building this
+ * object, so it must not change afterwards.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class SortedPotential {
+
+    private final CostFunction potential;
+
+    private final Variable[] variables;
+
+    private final Summarize operation;
+
+    private final int[] strides;
+
+    private final double[] values;
+
+    /** Entries sorted from best to worst, for each variable and value. */
+    private final int[][][] entries;
+
+    private long visited;
+
+    /**
+     * Sorts the entries of the given potential.
+     *
+     * @param potential potential to sort.
+     */
+    public SortedPotential(CostFunction potential) {
+        final CostFunctionFactory factory = potential.getFactory();
+        operation = factory.getSummarizeOperation();
+        if (operation != Summarize.MAX && operation != Summarize.MIN) {
+            throw new UnsupportedOperationException("Sorted potentials are only supported "
+                    + "when maximizing or minimizing.");
+        }
+        if (potential.getSize() > Integer.MAX_VALUE || potential.getSize() < 0) {
+            throw new IllegalArgumentException("Potential too large to be sorted.");
+        }
+        this.potential = potential;
+        variables = potential.getVariableSet().toArray(new Variable[0]);
+
+        final int n = variables.length;
+        final int size = (int)potential.getSize();
+        strides = new int[n];
+        for (int i=n-1, stride=1; i>=0; i--) {
+            strides[i] = stride;
+            stride *= variables[i].getDomain();
+        }
+
+        // Sort all the entries once, and split them by value keeping the order.
+        // Each entry is keyed by the rank of its value in the upper bits and
+        // by its index in the lower ones, so a primitive sort orders them.
+        values = new double[size];
+        for (int i=0; i<size; i++) {
+            values[i] = potential.getValue(i);
+        }
+        final double[] ranks = values.clone();
+        Arrays.sort(ranks);
+        final long[] order = new long[size];
+        for (int i=0; i<size; i++) {
+            long rank = Arrays.binarySearch(ranks, values[i]);
+            if (operation == Summarize.MAX) {
+                rank = size - 1 - rank;
+            }
+            order[i] = rank << 32 | i;
+        }
+        Arrays.sort(order);
+
+        entries = new int[n][][];
+        for (int i=0; i<n; i++) {
+            final int domain = variables[i].getDomain();
+            entries[i] = new int[domain][size / domain];
+            final int[] filled = new int[domain];
+            for (long key : order) {
+                final int idx = (int)key;
+                final int x = (idx / strides[i]) % domain;
+                entries[i][x][filled[x]++] = idx;
+            }
+        }
+    }
+
+    /**
+     * Get the sorted potential.
+     *
+     * @return sorted potential.
+     */
+    public CostFunction getPotential() {
+        return potential;
+    }
+
+    /**
+     * Get the number of entries visited by all the marginal computations so
+     * far.
+     *
+     * @return number of visited entries.
+     */
+    public long getVisitedEntries() {
+        return visited;
+    }
+
+    /**
+     * Computes the max-marginals (or min-marginals) of the combination of
+     * the potential with the given messages, excluding each variable's own
+     * message.
+     *
+     * Only additive combination is supported.
+     *
+     * @param messages unary message over each of the potential's variables
+     *                 (following the order of the variables), or null for
+     *                 neutral messages.
+     * @return unary marginal over each of the potential's variables.
+     * @throws IllegalArgumentException if some message is not unary over its
+     *                                  variable.
+     */
+    public CostFunction[] getMaxMarginals(CostFunction[] messages) {
+        final CostFunctionFactory factory = potential.getFactory();
+        if (factory.getCombineOperation() != Combine.SUM
+                || factory.getSummarizeOperation() != operation) {
+            throw new UnsupportedOperationException("Sorted marginals are only supported "
+                    + "for max-sum and min-sum, with the operation used when sorting.");
+        }
+        final int n = variables.length;
+        if (messages.length != n) {
+            throw new IllegalArgumentException("A message is needed for each variable.");
+        }
+        for (int i=0; i<n; i++) {
+            if (messages[i] != null && (messages[i].getVariableSet().size() != 1
+                    || !messages[i].getVariableSet().contains(variables[i]))) {
+                throw new IllegalArgumentException("Message " + messages[i]
+                        + " is not unary over variable " + variables[i] + ".");
+            }
+        }
+
+        // Work as if maximizing, negating everything when minimizing
+        final double sign = operation == Summarize.MAX ? 1 : -1;
+        final double ng = Double.NEGATIVE_INFINITY;
+        final double[][] m = new double[n][];
+        final double[] best = new double[n];
+        for (int i=0; i<n; i++) {
+            final int domain = variables[i].getDomain();
+            m[i] = new double[domain];
+            best[i] = messages[i] == null ? 0 : ng;
+            for (int x=0; x<domain && messages[i] != null; x++) {
+                m[i][x] = sign * messages[i].getValue(x);
+                best[i] = Math.max(best[i], m[i][x]);
+            }
+        }
+
+        final CostFunction[] result = new CostFunction[n];
+        for (int i=0; i<n; i++) {
+            double bound = 0;
+            for (int j=0; j<n; j++) {
+                if (j != i) {
+                    bound += best[j];
+                }
+            }
+
+            final double[] marginal = new double[variables[i].getDomain()];
+            for (int x=0; x<marginal.length; x++) {
+                double optimal = ng;
+                for (int idx : entries[i][x]) {
+                    final double p = sign * values[idx];
+                    visited++;
+                    if (p + bound <= optimal || p + bound == ng) {
+                        break;
+                    }
+                    double v = p;
+                    for (int j=0; j<n; j++) {
+                        if (j != i) {
+                            v += m[j][(idx / strides[j]) % m[j].length];
+                        }
+                    }
+                    optimal = Math.max(optimal, v);
+                }
+                marginal[x] = sign * optimal;
+            }
+
+            result[i] = factory.buildCostFunction(new Variable[]{variables[i]}, 0);
+            result[i].setValues(marginal);
+        }
+        return result;
+    }
+
+}
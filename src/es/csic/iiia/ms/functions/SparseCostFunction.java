@@ -0,0 +1,272 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import gnu.trove.impl.Constants;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Cost Function implementation that only stores the elements whose value is
+ * not a nogood, in a hash map indexed by their linearized indices. Therefore,
+ * this is the preferred implementation for heavily constrained functions,
+ * where most of the configurations are infeasible.
+ *
+ * The value of the elements that are not stored (the <em>default</em> value)
+ * is the nogood of the summarization operation in use when the function was
+ * built.
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public final class SparseCostFunction extends AbstractCostFunction implements Serializable {
+
+    /**
+     * Stored (non-default) values, indexed by their linearized indices.
+     */
+    private TLongDoubleHashMap values;
+
+    /**
+     * Value of the elements that are not stored.
+     */
+    private final double defaultValue;
+
+    /**
+     * Creates a new CostFunction, initialized to the given default value.
+     *
+     * @param variables involved in this factor.
+     * @param defaultValue value of the elements that are not stored.
+     */
+    protected SparseCostFunction(Variable[] variables, double defaultValue) {
+        super(variables);
+        this.defaultValue = defaultValue;
+        values = newMap();
+    }
+
+    /**
+     * Constructs a new factor by copying the given one.
+     *
+     * @param factor factor to copy.
+     */
+    protected SparseCostFunction(CostFunction factor) {
+        super(factor);
+        if (factor instanceof SparseCostFunction) {
+            final SparseCostFunction other = (SparseCostFunction)factor;
+            defaultValue = other.defaultValue;
+            values = new TLongDoubleHashMap(other.values);
+            return;
+        }
+
+        defaultValue = getFactory().getSummarizeOperation().getNoGood();
+        values = newMap();
+        TLongIterator it = factor.iterator();
+        while (it.hasNext()) {
+            final long i = it.next();
+            setValue(i, factor.getValue(i));
+        }
+    }
+
+    private TLongDoubleHashMap newMap() {
+        return new TLongDoubleHashMap(Constants.DEFAULT_CAPACITY,
+                Constants.DEFAULT_LOAD_FACTOR, -1, defaultValue);
+    }
+
+    /**
+     * Get the value of the elements that are not stored by this function.
+     *
+     * @return value of the non-stored elements.
+     */
+    public double getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * Get the number of elements actually stored by this function.
+     *
+     * @return number of stored elements.
+     */
+    public long getStoredSize() {
+        return values.size();
+    }
+
+    @Override
+    public void initialize(Double initialValue) {
+        values.clear();
+        if (initialValue != defaultValue) {
+            super.initialize(initialValue);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double[] getValues() {
+        if (size > Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException("Unable to expand a sparse cost function"
+                    + " of more than " + Integer.MAX_VALUE + " elements.");
+        }
+
+        double[] result = new double[(int)size];
+        Arrays.fill(result, defaultValue);
+        TLongIterator it = values.keySet().iterator();
+        while (it.hasNext()) {
+            final long i = it.next();
+            result[(int)i] = values.get(i);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValues(double[] values) {
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid index specification");
+        }
+
+        this.values.clear();
+        for (int i=0; i<values.length; i++) {
+            setValue(i, values[i]);
+        }
+    }
+
+    /**
+     * Checks whether the non-stored elements are nogoods under the current
+     * summarize operation, which may have changed since this function was
+     * built. Only then can the non-stored elements be skipped.
+     *
+     * @return true if the default value is the current nogood.
+     */
+    private boolean isDefaultNoGood() {
+        return defaultValue == getFactory().getSummarizeOperation().getNoGood();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TLongIterator iterator() {
+        return isDefaultNoGood() ? new SparseIterator() : new DefaultIterator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MasterIterator masterIterator() {
+        return isDefaultNoGood() ? new SparseIterator() : new DefaultMasterIterator();
+    }
+
+    /**
+     * Summarizes only the stored elements of this function, or all of them
+     * if the non-stored ones are not nogoods anymore.
+     *
+     * @param result function where to store the summarization.
+     */
+    @Override
+    protected void _summarize(CostFunction result) {
+        if (isDefaultNoGood()) {
+            _iteratorSummarize(result);
+        } else {
+            super._summarize(result);
+        }
+    }
+
+    @Override
+    public double getValue(long index) {
+        return values.get(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setValue(long index, double value) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index " + index);
+        }
+
+        if (value == defaultValue) {
+            values.remove(index);
+        } else {
+            values.put(index, value);
+        }
+    }
+
+    /**
+     * Implements the Iterator interface for a sparse function, iterating over
+     * its stored elements only (in increasing index order) and maintaining
+     * their non-linearized indices.
+     *
+     * The stored indices are collected when the iterator is created, so the
+     * function can be safely modified while iterating it.
+     */
+    protected class SparseIterator implements MasterIterator {
+        private final long[] idxs;
+        private final int[] subidx = new int[variables.length];
+        private int pos;
+
+        public SparseIterator() {
+            idxs = values.keys();
+            Arrays.sort(idxs);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < idxs.length;
+        }
+
+        @Override
+        public long next() {
+            if (pos >= idxs.length) {
+                throw new NoSuchElementException();
+            }
+
+            final long idx = idxs[pos++];
+            indexToSubindex(idx, subidx);
+            return idx;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("You can not remove elements from a sparse function.");
+        }
+
+        @Override
+        public int[] getIndices() {
+            return subidx;
+        }
+    }
+
+}
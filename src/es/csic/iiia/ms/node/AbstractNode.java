@@ -41,6 +41,7 @@ import es.csic.iiia.ms.Identity;
 import es.csic.iiia.ms.Variable;
 import es.csic.iiia.ms.functions.CostFunction;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -83,19 +84,60 @@ public abstract class AbstractNode implements Node {
 
     @Override
     public void run() {
-        belief = getPotential().combine(messages.values()).normalize();
-        for (Identity neighbor : neighbors.keySet()) {
-            CostFunction msg = belief.combine(messages.get(neighbor).negate());
-            send(msg, neighbor);
+        final CostFunction previous = belief;
+        belief = getPotential().combineAndNormalize(messages.values());
+        if (previous != null) {
+            previous.release();
+        }
+        for (Map.Entry<Identity, Variable> e : neighbors.entrySet()) {
+            CostFunction negated = messages.get(e.getKey()).negate();
+            CostFunction msg = belief.combine(negated);
+            negated.release();
+            send(msg, e.getKey());
         }
     }
 
     @Override
     public void receive(CostFunction message, Identity neighbor) {
-        messages.put(neighbor, message);
+        final CostFunction previous = messages.put(neighbor, message);
+        if (previous != null && previous != message) {
+            previous.release();
+        }
+    }
+
+    protected Map<Identity, Variable> getNeighbors() {
+        return neighbors;
+    }
+
+    protected CostFunction getMessage(Identity neighbor) {
+        return messages.get(neighbor);
+    }
+
+    /**
+     * Projects a message onto the given variable.
+     *
+     * Messages that are already unary over the variable are returned as they
+     * are, whereas messages over a larger scope (such as the ones sent by
+     * variable nodes) are summarized onto it. In the latter case, the caller
+     * must release the returned function once done with it.
+     *
+     * @param message message to project.
+     * @param variable variable to project the message onto.
+     * @return unary message over the given variable.
+     */
+    protected static CostFunction project(CostFunction message, Variable variable) {
+        final Set<Variable> scope = message.getVariableSet();
+        if (!scope.contains(variable)) {
+            throw new IllegalArgumentException("Message " + message
+                    + " does not involve variable " + variable + ".");
+        }
+        if (scope.size() == 1) {
+            return message;
+        }
+        return message.summarize(new Variable[]{variable});
     }
 
-    private void send(CostFunction message, Identity neighbor) {
+    protected void send(CostFunction message, Identity neighbor) {
         this.comunicator.send(message, id, neighbor);
     }
 
@@ -0,0 +1,92 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.node;
+
+import es.csic.iiia.ms.Communicator;
+import es.csic.iiia.ms.Identity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.functions.CardinalityCostFunction;
+import es.csic.iiia.ms.functions.CostFunction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Function node of a cardinality potential, whose messages are computed
+ * without enumerating the potential's configurations.
+ *
+ * The belief of such nodes is never built, because it involves all the
+ * neighbors' variables.
+ *
+ * The node sends each neighbor a unary max-marginal over the variable they
+ * share. Incoming messages may be either unary over that variable or span a
+ * larger scope (as the full-scope messages sent by {@link VariableNode}s),
+ * in which case they are summarized onto the shared variable first.
+ *
+ * @author Marc Pujol <mpujol@iiia.csic.es>
+ */
+public class CardinalityFunctionNode extends AbstractNode {
+
+    public CardinalityFunctionNode(Identity id, Communicator communicator,
+            CardinalityCostFunction potential) {
+        super(id, communicator, potential);
+    }
+
+    @Override
+    public void run() {
+        final CostFunction potential = getPotential();
+        final Map<Variable, Integer> positions = new HashMap<>();
+        for (Variable v : potential.getVariableSet()) {
+            positions.put(v, positions.size());
+        }
+
+        final CostFunction[] messages = new CostFunction[positions.size()];
+        for (Map.Entry<Identity, Variable> e : getNeighbors().entrySet()) {
+            messages[positions.get(e.getValue())] = project(getMessage(e.getKey()), e.getValue());
+        }
+
+        final CostFunction[] marginals = ((CardinalityCostFunction)potential).getMaxMarginals(messages);
+        for (Map.Entry<Identity, Variable> e : getNeighbors().entrySet()) {
+            final int i = positions.get(e.getValue());
+            if (messages[i] != getMessage(e.getKey())) {
+                messages[i].release();
+            }
+            send(marginals[i], e.getKey());
+        }
+    }
+
+}
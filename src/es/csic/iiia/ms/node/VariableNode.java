@@ -38,8 +38,12 @@ package es.csic.iiia.ms.node;
 
 import es.csic.iiia.ms.Communicator;
 import es.csic.iiia.ms.Identity;
-import es.csic.iiia.ms.VariableAssignment;
+import es.csic.iiia.ms.Variable;
 import es.csic.iiia.ms.functions.CostFunction;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  *
@@ -47,14 +51,113 @@ import es.csic.iiia.ms.functions.CostFunction;
  */
 public class VariableNode extends AbstractNode {
 
+    /**
+     * Number of nodes below which a batch of decisions is not split.
+     */
+    private static final int GRAIN = 256;
+
+    /**
+     * Random number generator used to break ties, seeded from the factory's
+     * one so that decisions do not depend on the order in which nodes select.
+     */
+    private final Random random;
+
+    /**
+     * Variable of this node (the one of its potential).
+     */
+    private final Variable variable;
+
+    /**
+     * Scratch array where the optimal values of the belief are written.
+     */
+    private int[] values = new int[0];
+
     public VariableNode(Identity id, Communicator communicator, CostFunction potential) {
         super(id, communicator, potential);
+        random = new Random(potential.getFactory().getRandom().nextLong());
+        variable = potential.getVariableSet().iterator().next();
     }
 
     public int select() {
+        // The belief may involve the neighbors' variables too
         final CostFunction belief = getBelief();
-        VariableAssignment configuration = belief.getOptimalConfiguration(null);
-        return configuration.get(configuration.keySet().iterator().next());
+        final int len = belief.getVariableSet().size();
+        if (values.length != len) {
+            values = new int[len];
+        }
+        belief.getOptimalValues(values, random);
+
+        int i = 0;
+        for (Variable v : belief.getVariableSet()) {
+            if (v.equals(variable)) {
+                return values[i];
+            }
+            i++;
+        }
+        throw new RuntimeException("The belief does not involve this node's variable");
+    }
+
+    /**
+     * Selects the values of all the given nodes, in parallel when there are
+     * many of them.
+     *
+     * @param nodes nodes whose value to select.
+     * @param decisions array to fill with the selected values, instantiated if
+     *                  null.
+     * @return selected value of each node.
+     */
+    public static int[] select(List<VariableNode> nodes, int[] decisions) {
+        if (decisions == null) {
+            decisions = new int[nodes.size()];
+        }
+        if (nodes.size() <= GRAIN) {
+            select(nodes, decisions, 0, nodes.size());
+            return decisions;
+        }
+
+        final ForkJoinPool pool = nodes.get(0).getPotential().getFactory().getPool();
+        pool.invoke(new SelectTask(nodes, decisions, 0, nodes.size()));
+        return decisions;
+    }
+
+    private static void select(List<VariableNode> nodes, int[] decisions, int from, int to) {
+        for (int i=from; i<to; i++) {
+            decisions[i] = nodes.get(i).select();
+        }
+    }
+
+    /**
+     * Fork/join task that selects the values of a range of nodes.
+     */
+    private static final class SelectTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<VariableNode> nodes;
+
+        private final int[] decisions;
+
+        private final int from;
+
+        private final int to;
+
+        SelectTask(List<VariableNode> nodes, int[] decisions, int from, int to) {
+            this.nodes = nodes;
+            this.decisions = decisions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                select(nodes, decisions, from, to);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new SelectTask(nodes, decisions, from, mid),
+                    new SelectTask(nodes, decisions, mid, to));
+        }
+
     }
 
 }
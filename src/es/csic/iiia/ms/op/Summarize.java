@@ -98,6 +98,41 @@ public enum Summarize {
         public double getNoGood() {
             return 0;
         }
+    },
+
+    /**
+     * Perform the summarize operator using the logarithm of the sum of the
+     * exponentials, which adds probabilities represented by their logarithms.
+     *
+     * Combined with {@link Combine#SUM}, this computes sum-product marginals
+     * in log-space, where long chains of products can not underflow.
+     */
+    LOGSUMEXP {
+        @Override
+        public double eval(double x, double y) {
+            if (x == Double.NEGATIVE_INFINITY) {
+                return y;
+            }
+            if (y == Double.NEGATIVE_INFINITY) {
+                return x;
+            }
+            final double max = Math.max(x, y);
+            if (max == Double.POSITIVE_INFINITY) {
+                // Avoid computing inf - inf
+                return max;
+            }
+            return max + Math.log1p(Math.exp(Math.min(x, y) - max));
+        }
+
+        @Override
+        public boolean isBetter(double x, double y) {
+            return x - y > 0.00001;
+        }
+
+        @Override
+        public double getNoGood() {
+            return Double.NEGATIVE_INFINITY;
+        }
     };
 
     /**
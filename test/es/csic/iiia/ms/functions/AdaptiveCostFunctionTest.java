@@ -0,0 +1,141 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author marc
+ */
+public class AdaptiveCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setRepresentation(Representation.ADAPTIVE);
+        return f;
+    }
+
+    /**
+     * Test that sparse inputs produce sparse combinations.
+     */
+    @Test
+    public void testCombineKeepsSparse() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        final double ng = Summarize.MAX.getNoGood();
+        Variable x = new Variable(new StringIdentity("x"), 10);
+        Variable y = new Variable(new StringIdentity("y"), 10);
+        Variable z = new Variable(new StringIdentity("z"), 10);
+
+        CostFunction fxy = factory.convert(
+                factory.buildCostFunction(new Variable[]{x,y}, ng), Representation.SPARSE);
+        fxy.setValue(new int[]{1,2}, 1);
+        CostFunction fyz = factory.convert(
+                factory.buildCostFunction(new Variable[]{y,z}, ng), Representation.SPARSE);
+        fyz.setValue(new int[]{2,3}, 2);
+        fyz.setValue(new int[]{4,3}, 2);
+
+        CostFunction com = fxy.combine(fyz);
+        assertEquals(Representation.SPARSE, factory.getRepresentation(com));
+        assertEquals(3, com.getValue(new int[]{1,2,3}), 0);
+        assertEquals(ng, com.getValue(new int[]{1,4,3}), 0);
+
+        CostFunction sum = com.summarize(new Variable[]{x});
+        assertEquals(Representation.SPARSE, factory.getRepresentation(sum));
+        assertEquals(3, sum.getValue(1), 0);
+        assertEquals(ng, sum.getValue(0), 0);
+    }
+
+    /**
+     * Test that mostly-nogood marginals are adapted to sparse functions.
+     */
+    @Test
+    public void testSummarizeAllAdapts() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        final double ng = Summarize.MAX.getNoGood();
+        Variable x = new Variable(new StringIdentity("x"), 10);
+        Variable y = new Variable(new StringIdentity("y"), 10);
+
+        CostFunction f = factory.buildCostFunction(new Variable[]{x,y}, ng);
+        f.setValue(new int[]{1,2}, 1);
+        CostFunction[] marginals = f.summarizeAll();
+        for (CostFunction m : marginals) {
+            assertEquals(Representation.SPARSE, factory.getRepresentation(m));
+        }
+        assertEquals(1, marginals[0].getValue(1), 0);
+        assertEquals(ng, marginals[1].getValue(1), 0);
+    }
+
+    /**
+     * Test that functions are converted when they cross the thresholds.
+     */
+    @Test
+    public void testAdapt() {
+        factory.setSummarizeOperation(Summarize.MAX);
+        final double ng = Summarize.MAX.getNoGood();
+
+        CostFunction f = factory.buildCostFunction(new Variable[]{a,b,c}, ng);
+        assertEquals(Representation.DENSE, factory.getRepresentation(f));
+        f = factory.adapt(f);
+        assertEquals(Representation.SPARSE, factory.getRepresentation(f));
+
+        f.setValues(new double[]{
+            0.1, 0.2, 0.05, 0.2, 0.05, 0.03, 0, 0, 0.03, 0.2, 0.1, 0.04
+        });
+        CostFunction g = factory.adapt(f);
+        assertEquals(Representation.DENSE, factory.getRepresentation(g));
+        assertEquals(f, g);
+    }
+
+    /**
+     * Test of setThresholds method, of class CostFunctionFactory.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidThresholds() {
+        factory.setThresholds(0.5, 0.2);
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author marc
+ */
+public class AddCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setRepresentation(Representation.ADD);
+        return f;
+    }
+
+    /**
+     * Test of the diagram size of structured functions, of class
+     * AddCostFunction.
+     */
+    @Test
+    public void testNodeCount() {
+        Variable[] vars = new Variable[20];
+        for (int i=0; i<vars.length; i++) {
+            vars[i] = new Variable(new StringIdentity("v" + i), 2);
+        }
+
+        // Constant functions have a single terminal
+        AddCostFunction f = (AddCostFunction)factory.buildCostFunction(vars, 3);
+        assertEquals(1, f.getNodeCount());
+
+        // A value depending on a single variable adds one node
+        VariableAssignment map = new VariableAssignment();
+        for (Variable v : vars) {
+            map.put(v, 1);
+        }
+        f.setValue(f.getIndex(map), 5);
+        assertEquals(5, f.getValue(map), 0);
+        assertTrue(f.getNodeCount() <= 2*vars.length + 1);
+
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        CostFunction g = f.combine(f).summarize(new Variable[]{vars[0], vars[19]});
+        assertTrue(g instanceof AddCostFunction);
+        assertArrayEquals(new double[]{6, 6, 6, 10}, g.getValues(), 0);
+        assertEquals(10, g.getValue(g.getOptimalConfiguration(null)), 0);
+
+        map.remove(vars[0]);
+        map.remove(vars[19]);
+        CostFunction r = f.reduce(map);
+        assertTrue(r instanceof AddCostFunction);
+        assertArrayEquals(new double[]{3, 3, 3, 5}, r.getValues(), 0);
+    }
+
+    /**
+     * Test of the diagram kernels against the hypercube ones, of class
+     * AddCostFunction.
+     */
+    @Test
+    public void testKernels() {
+        factory.setMode(Summarize.MIN, Combine.SUM, Normalize.NONE);
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        fs.add(fda);
+        fs.add(fdc);
+        CostFunction com = f1.combine(fs);
+        CostFunction sum = com.summarize(new Variable[]{c,a});
+        assertTrue(com instanceof AddCostFunction);
+        assertTrue(sum instanceof AddCostFunction);
+
+        factory.setRepresentation(Representation.DENSE);
+        CostFunction df1 = factory.buildCostFunction(f1);
+        CostFunction dcom = df1.combine(fs);
+        CostFunction dsum = dcom.summarize(new Variable[]{c,a});
+        assertTrue(dsum instanceof HypercubeCostFunction);
+        assertEquals(dcom, com);
+        assertEquals(dsum, sum);
+    }
+
+}
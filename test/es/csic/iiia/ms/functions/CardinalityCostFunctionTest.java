@@ -0,0 +1,164 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class CardinalityCostFunctionTest {
+
+    private CostFunctionFactory factory;
+
+    private Random random;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        random = new Random(0);
+    }
+
+    private Variable[] buildVariables(int n) {
+        Variable[] vars = new Variable[n];
+        for (int i=0; i<n; i++) {
+            vars[i] = new Variable(new StringIdentity("v" + i), 2);
+        }
+        return vars;
+    }
+
+    private double[] buildPotentials(int n) {
+        double[] potentials = new double[n + 1];
+        for (int k=0; k<=n; k++) {
+            potentials[k] = random.nextInt(10);
+        }
+        return potentials;
+    }
+
+    /**
+     * Checks the cardinality marginals against the ones computed by explicit
+     * combination and summarization.
+     */
+    private void checkMarginals(Summarize operation, double ng) {
+        factory.setMode(operation, Combine.SUM, Normalize.NONE);
+        final int n = 6;
+        Variable[] vars = buildVariables(n);
+        CardinalityCostFunction f = factory.buildCardinalityCostFunction(vars,
+                buildPotentials(n));
+        CostFunction dense = factory.buildCostFunction(f);
+
+        CostFunction[] messages = new CostFunction[n];
+        for (int i=0; i<n; i++) {
+            messages[i] = factory.buildCostFunction(new Variable[]{vars[i]}, 0);
+            messages[i].setValues(new double[]{random.nextInt(10), random.nextInt(10)});
+        }
+        // Some variables are forced to a state, and one has no message
+        messages[1].setValue(0, ng);
+        messages[2].setValue(1, ng);
+        messages[4] = null;
+
+        CostFunction[] marginals = f.getMaxMarginals(messages);
+        for (int i=0; i<n; i++) {
+            ArrayList<CostFunction> others = new ArrayList<>(Arrays.asList(messages));
+            others.remove(i);
+            CostFunction expected = dense.combine(others).summarize(new Variable[]{vars[i]});
+            assertEquals(expected, marginals[i]);
+        }
+    }
+
+    @Test
+    public void testMaxMarginals() {
+        checkMarginals(Summarize.MAX, Double.NEGATIVE_INFINITY);
+    }
+
+    @Test
+    public void testMinMarginals() {
+        checkMarginals(Summarize.MIN, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Test that messages not unary over their variable are rejected.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testNonUnaryMessage() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        Variable[] vars = buildVariables(2);
+        CardinalityCostFunction f = factory.buildCardinalityCostFunction(vars,
+                buildPotentials(2));
+        f.getMaxMarginals(new CostFunction[]{factory.buildCostFunction(vars, 0), null});
+    }
+
+    /**
+     * Test of functions too large for any other representation.
+     */
+    @Test
+    public void testLargeFunction() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        final int n = 80;
+        Variable[] vars = buildVariables(n);
+        double[] potentials = new double[n + 1];
+        potentials[3] = 10;
+        CardinalityCostFunction f = factory.buildCardinalityCostFunction(vars, potentials);
+        assertEquals(-1, f.getSize());
+
+        int[] index = new int[n];
+        index[5] = index[7] = index[70] = 1;
+        assertEquals(10, f.getValue(index), 0);
+
+        CostFunction[] marginals = f.getMaxMarginals(new CostFunction[n]);
+        assertArrayEquals(new double[]{10, 10}, marginals[0].getValues(), 0);
+        int active = 0;
+        for (int value : f.getOptimalConfiguration(null).values()) {
+            active += value;
+        }
+        assertEquals(3, active);
+    }
+
+}
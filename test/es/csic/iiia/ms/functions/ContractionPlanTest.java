@@ -0,0 +1,122 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class ContractionPlanTest {
+
+    private CostFunctionFactory factory;
+
+    private Variable[] v;
+
+    private List<CostFunction> chain;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+
+        // A chain of pairwise functions v0-v1, v1-v2, ..., v7-v8
+        Random random = new Random(0);
+        v = new Variable[9];
+        for (int i=0; i<v.length; i++) {
+            v[i] = new Variable(new StringIdentity("v" + i), 3);
+        }
+        chain = new ArrayList<>();
+        for (int i=0; i<v.length-1; i++) {
+            CostFunction f = factory.buildCostFunction(new Variable[]{v[i], v[i+1]}, 0);
+            for (int j=0; j<f.getSize(); j++) {
+                f.setValue(j, random.nextInt(10));
+            }
+            chain.add(f);
+        }
+    }
+
+    /**
+     * Test of the planned elimination, of class ContractionPlan.
+     */
+    @Test
+    public void testPlan() {
+        ContractionPlan plan = new ContractionPlan(factory, chain, new Variable[]{v[0]});
+        assertTrue(plan.isWorthwhile());
+        assertEquals(v.length - 1, plan.getEliminationOrder().size());
+        assertTrue(plan.getCost() < plan.getNaiveCost() / 100);
+    }
+
+    /**
+     * Test of the planned result against the direct combination, of class
+     * ContractionPlan.
+     */
+    @Test
+    public void testExecute() {
+        for (Variable[] keep : new Variable[][]{{v[0]}, {v[8], v[4]}, {}}) {
+            CostFunction combination = chain.get(0).combine(chain.subList(1, chain.size()));
+            CostFunction expected = combination.summarize(keep);
+            assertEquals(expected, new ContractionPlan(factory, chain, keep).execute());
+            assertEquals(expected, chain.get(0).combineAndSummarize(
+                    chain.subList(1, chain.size()), keep));
+        }
+    }
+
+    /**
+     * Test of non-distributive operations, of class ContractionPlan.
+     */
+    @Test
+    public void testNonDistributive() {
+        factory.setSummarizeOperation(Summarize.SUM);
+        ContractionPlan plan = new ContractionPlan(factory, chain, new Variable[]{v[0]});
+        assertFalse(plan.isWorthwhile());
+    }
+
+}
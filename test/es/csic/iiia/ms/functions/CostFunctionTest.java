@@ -49,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.*;
@@ -617,6 +618,100 @@ public abstract class CostFunctionTest {
         assertSame(com.getFactory(), res.getFactory());
     }
 
+    /**
+     * Test of summarizeAll method, of class CostFunction.
+     */
+    @Test
+    public void testSummarizeAll() {
+        for (Summarize operation : Summarize.values()) {
+            factory.setSummarizeOperation(operation);
+            CostFunction[] marginals = f1.summarizeAll();
+            Variable[] vars = f1.getVariableSet().toArray(new Variable[0]);
+            assertEquals(vars.length, marginals.length);
+            for (int i=0; i<vars.length; i++) {
+                assertEquals(f1.summarize(new Variable[]{vars[i]}), marginals[i]);
+            }
+        }
+    }
+
+    /**
+     * Test of combineAndSummarize method, of class CostFunction.
+     */
+    @Test
+    public void testCombineAndSummarize() {
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        fs.add(fda);
+        fs.add(null);
+        fs.add(fdc);
+        for (Summarize operation : Summarize.values()) {
+            factory.setSummarizeOperation(operation);
+            for (Variable[] vars : new Variable[][]{{d}, {c,a}, {}, {a,b,c,d}}) {
+                CostFunction res = f1.combine(fs).summarize(vars);
+                CostFunction fused = f1.combineAndSummarize(fs, vars);
+                assertEquals(res, fused);
+                assertSame(res.getFactory(), fused.getFactory());
+            }
+        }
+    }
+
+    /**
+     * Test of getOptimalIndex and getOptimalValues methods, of class
+     * CostFunction.
+     */
+    @Test
+    public void testGetOptimalIndex() {
+        final long idx = f1.getOptimalIndex(null);
+        assertEquals(0.2, f1.getValue(idx), 1e-3);
+
+        // Ties are broken reproducibly, but not always the same way
+        LinkedHashSet<Long> chosen = new LinkedHashSet<>();
+        for (int seed=0; seed<20; seed++) {
+            final long i = instance.getOptimalIndex(new Random(seed));
+            assertEquals(i, instance.getOptimalIndex(new Random(seed)));
+            chosen.add(i);
+        }
+        assertTrue(chosen.size() > 1);
+
+        int[] values = new int[variables.length];
+        final long i = instance.getOptimalIndex(new Random(0));
+        assertSame(values, instance.getOptimalValues(values, new Random(0)));
+        VariableAssignment mapping = instance.getMapping(i, null);
+        for (int j=0; j<variables.length; j++) {
+            assertEquals((int)mapping.get(variables[j]), values[j]);
+        }
+    }
+
+    /**
+     * Test of combineAndNormalize method, of class CostFunction.
+     */
+    @Test
+    public void testCombineAndNormalize() {
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        for (Normalize mode : Normalize.values()) {
+            factory.setNormalizationType(mode);
+            fs.clear();
+            assertEquals(f1.combine(fs).normalize(), f1.combineAndNormalize(fs));
+            fs.add(fda);
+            assertEquals(f1.combine(fs).normalize(), f1.combineAndNormalize(fs));
+            fs.add(null);
+            fs.add(fdc);
+            CostFunction expected = f1.combine(fs).normalize();
+            CostFunction fused = f1.combineAndNormalize(fs);
+            assertEquals(expected, fused);
+            assertSame(expected.getFactory(), fused.getFactory());
+        }
+    }
+
+    /**
+     * Test of getOptimalIndex method, of class CostFunction, when every
+     * element is a nogood.
+     */
+    @Test(expected=RuntimeException.class)
+    public void testGetOptimalIndexNogoods() {
+        final double ng = factory.getSummarizeOperation().getNoGood();
+        factory.buildCostFunction(variables, ng).getOptimalIndex(new Random(0));
+    }
+
     @Test
     public void testCombineNogoods() {
         factory.setSummarizeOperation(Summarize.MIN);
@@ -1006,6 +1101,75 @@ public abstract class CostFunctionTest {
         assertEquals(red, res);
     }
 
+    /**
+     * Test of slice method, of class CostFunction.
+     */
+    @Test
+    public void testSlice() {
+        VariableAssignment map = new VariableAssignment();
+        map.put(b, 1);
+        map.put(d, 0);
+        CostFunction slice = f1.slice(map);
+        assertEquals(f1.reduce(map), slice);
+        assertSame(f1.getFactory(), slice.getFactory());
+        assertEquals(f1.reduce(map).summarize(new Variable[]{c}),
+                slice.summarize(new Variable[]{c}));
+        VariableAssignment first = slice.getMapping(0, null);
+        first.putAll(map);
+        f1.setValue(f1.getIndex(first), factory.getSummarizeOperation().getNoGood());
+        assertArrayEquals(f1.reduce(map).getValues(), slice.getValues(), 1e-3);
+        TLongIterator expected = f1.reduce(map).iterator();
+        TLongIterator actual = slice.iterator();
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            assertEquals(expected.next(), actual.next());
+        }
+        assertFalse(actual.hasNext());
+
+        // Slices are views of the sliced function
+        VariableAssignment full = slice.getMapping(1, null);
+        full.putAll(map);
+        f1.setValue(f1.getIndex(full), 0.5);
+        assertEquals(0.5, slice.getValue(1), 1e-3);
+        try {
+            slice.setValue(0, 0);
+            fail("Slices should be read-only");
+        } catch (UnsupportedOperationException e) {}
+
+        map.put(a, 1);
+        map.put(c, 2);
+        assertEquals(f1.reduce(map), f1.slice(map));
+    }
+
+    /**
+     * Test of maxAbsDifference and l1Difference methods, of class
+     * CostFunction.
+     */
+    @Test
+    public void testDifference() {
+        CostFunction other = factory.buildCostFunction(f1);
+        other.setValue(3, 0.5);
+        other.setValue(7, 0.1);
+        assertEquals(0.3, f1.maxAbsDifference(other), 1e-3);
+        assertEquals(0.4, f1.l1Difference(other), 1e-3);
+        assertEquals(0, f1.maxAbsDifference(f1), 0);
+
+        // Functions over the same variables in a different order
+        CostFunction reordered = factory.buildCostFunction(new Variable[]{c,a,b}, 0);
+        VariableAssignment map = null;
+        for (long i=0; i<f1.getSize(); i++) {
+            map = f1.getMapping(i, map);
+            reordered.setValue(reordered.getIndex(map), other.getValue(i));
+        }
+        assertEquals(0.3, f1.maxAbsDifference(reordered), 1e-3);
+        assertEquals(0.4, reordered.l1Difference(f1), 1e-3);
+
+        try {
+            f1.l1Difference(fda);
+            fail("Functions over different variables can not be compared");
+        } catch (IllegalArgumentException e) {}
+    }
+
     /**
      * Test of iterator method, of class CostFunction.
      */
@@ -0,0 +1,125 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author marc
+ */
+public class FloatHypercubeCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setRepresentation(Representation.FLOAT);
+        return f;
+    }
+
+    /**
+     * Test of setValue method, of class FloatHypercubeCostFunction.
+     *
+     * Values are stored in single precision, so they can not be compared
+     * exactly.
+     */
+    @Test
+    @Override
+    public void testSetValue1() {
+        int[] sub = {1, 2, 0};
+        double value = 5.2d;
+        instance.setValue(sub, value);
+        assertEquals(value, instance.getValue(sub), 1e-6);
+    }
+
+    /**
+     * Test of setValue method, of class FloatHypercubeCostFunction.
+     */
+    @Test
+    @Override
+    public void testSetValue2() {
+        int[] sub = {2, 2, 2};
+        double value = 5.2d;
+        instance.setValue(sub, value);
+        assertEquals(value, instance.getValue(sub), 1e-6);
+    }
+
+    /**
+     * Test of setValue method, of class FloatHypercubeCostFunction.
+     */
+    @Test
+    @Override
+    public void testSetValue3() {
+        int[] sub = {1, 2, 0};
+        double value = 5.2d;
+        instance.setValue(sub, value);
+        assertEquals(value, instance.getValue(15), 1e-6);
+    }
+
+    /**
+     * Test of the single-precision kernels against the double precision
+     * ones, of class FloatHypercubeCostFunction.
+     */
+    @Test
+    public void testKernels() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        fs.add(fda);
+        fs.add(fdc);
+        CostFunction com = f1.combine(fs);
+        CostFunction sum = com.summarize(new Variable[]{c,a});
+        assertTrue(com instanceof FloatHypercubeCostFunction);
+        assertTrue(sum instanceof FloatHypercubeCostFunction);
+
+        factory.setRepresentation(Representation.DENSE);
+        CostFunction df1 = factory.buildCostFunction(f1);
+        CostFunction dcom = df1.combine(fs);
+        CostFunction dsum = dcom.summarize(new Variable[]{c,a});
+        assertTrue(dsum instanceof HypercubeCostFunction);
+        assertEquals(dcom, com);
+        assertEquals(dsum, sum);
+    }
+
+}
@@ -73,4 +73,39 @@ public class HypercubeCostFunctionTest extends AbstractCostFunctionTest {
         assertSame(com.getFactory(), res.getFactory());
     }
 
+    /**
+     * Test of the log-space semiring, comparing it against the same
+     * operations in the probability space.
+     */
+    @Test
+    public void testLogSumExp() {
+        factory.setMode(Summarize.SUM, Combine.PRODUCT, Normalize.NONE);
+        CostFunction sum = f1.summarize(new Variable[]{a,c});
+        CostFunction expected = f1.combine(sum).summarize(new Variable[]{b});
+
+        factory.setMode(Summarize.LOGSUMEXP, Combine.SUM, Normalize.NONE);
+        CostFunction lf1 = factory.buildCostFunction(f1);
+        for (int i=0; i<lf1.getSize(); i++) {
+            lf1.setValue(i, Math.log(f1.getValue(i)));
+        }
+        CostFunction lsum = lf1.summarize(new Variable[]{a,c});
+        CostFunction result = lf1.combine(lsum).summarize(new Variable[]{b});
+        for (int i=0; i<expected.getSize(); i++) {
+            assertEquals(expected.getValue(i), Math.exp(result.getValue(i)), 1e-9);
+        }
+
+        // Products of tiny probabilities do not underflow in log-space
+        CostFunction tiny = factory.buildCostFunction(new Variable[]{a}, Math.log(1e-200));
+        CostFunction chain = tiny.combine(tiny).combine(tiny).summarize(new Variable[0]);
+        assertEquals(3*Math.log(1e-200) + Math.log(a.getDomain()), chain.getValue(0), 1e-9);
+
+        // Infinite values absorb the rest instead of producing NaNs
+        final double inf = Double.POSITIVE_INFINITY;
+        assertEquals(inf, Summarize.LOGSUMEXP.eval(inf, inf), 0);
+        assertEquals(inf, Summarize.LOGSUMEXP.eval(inf, 1), 0);
+        assertEquals(1 + Math.log(2), Summarize.LOGSUMEXP.eval(1, 1), 1e-9);
+        CostFunction infinite = factory.buildCostFunction(new Variable[]{a}, inf);
+        assertEquals(inf, infinite.summarize(new Variable[0]).getValue(0), 0);
+    }
+
 }
@@ -0,0 +1,178 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class IntegerCostFunctionTest {
+
+    private static final double ng = Double.POSITIVE_INFINITY;
+
+    private CostFunctionFactory factory;
+
+    private Variable x, y, z;
+
+    private CostFunction fxy, fyz;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(Summarize.MIN, Combine.SUM, Normalize.NONE);
+        factory.setRepresentation(Representation.INTEGER);
+        factory.setTop(100);
+
+        x = new Variable(new StringIdentity("x"), 2);
+        y = new Variable(new StringIdentity("y"), 3);
+        z = new Variable(new StringIdentity("z"), 2);
+        fxy = factory.buildCostFunction(new Variable[]{x, y}, 0);
+        fxy.setValues(new double[]{0, 3, ng, 60, 1, 2});
+        fyz = factory.buildCostFunction(new Variable[]{y, z}, 0);
+        fyz.setValues(new double[]{50, 4, 7, ng, 0, 45});
+    }
+
+    /**
+     * Test of value rounding and saturation, of class IntegerCostFunction.
+     */
+    @Test
+    public void testSetValue() {
+        CostFunction f = factory.buildCostFunction(new Variable[]{x}, 0);
+        f.setValue(0, 5.0000000001);
+        assertEquals(5, f.getValue(0), 0);
+        f.setValue(1, 150);
+        assertEquals(ng, f.getValue(1), 0);
+        assertEquals(100, ((IntegerCostFunction)f).getIntValues()[1]);
+    }
+
+    /**
+     * Test that fractional values are rejected, of class IntegerCostFunction.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testFractionalValue() {
+        CostFunction f = factory.buildCostFunction(new Variable[]{x}, 0);
+        f.setValue(0, 5.2);
+    }
+
+    /**
+     * Test that integer functions can not be combined with normalization,
+     * which produces fractional values.
+     */
+    @Test
+    public void testNormalization() {
+        try {
+            factory.setNormalizationType(Normalize.SUM0);
+            fail("Integer functions can not be normalized");
+        } catch (IllegalArgumentException e) {}
+        try {
+            factory.setMode(Summarize.MIN, Combine.SUM, Normalize.SUM1);
+            fail("Integer functions can not be normalized");
+        } catch (IllegalArgumentException e) {}
+        assertEquals(Normalize.NONE, factory.getNormalizationType());
+
+        CostFunctionFactory other = new CostFunctionFactory();
+        other.setMode(Summarize.MIN, Combine.SUM, Normalize.SUM0);
+        try {
+            other.setRepresentation(Representation.INTEGER);
+            fail("Integer functions can not be normalized");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    /**
+     * Test of the saturating combination, of class IntegerCostFunction.
+     */
+    @Test
+    public void testCombine() {
+        CostFunction com = fxy.combine(fyz);
+        assertTrue(com instanceof IntegerCostFunction);
+
+        CostFunction res = factory.buildCostFunction(new Variable[]{x, y, z}, 0);
+        res.setValues(new double[]{50, 4, 10, ng, ng, ng, ng, 64, 8, ng, 2, 47});
+        assertEquals(res, com);
+
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        fs.add(fyz);
+        fs.add(fyz);
+        com = fxy.combine(fs);
+        res.setValues(new double[]{ng, 8, 17, ng, ng, ng, ng, 68, 15, ng, 2, 92});
+        assertEquals(res, com);
+    }
+
+    /**
+     * Test of the minimizing summarization, of class IntegerCostFunction.
+     */
+    @Test
+    public void testSummarize() {
+        CostFunction com = fxy.combine(fyz);
+        CostFunction sum = com.summarize(new Variable[]{z, x});
+        assertTrue(sum instanceof IntegerCostFunction);
+
+        CostFunction res = factory.buildCostFunction(new Variable[]{z, x}, 0);
+        res.setValues(new double[]{10, 2, 4, 47});
+        assertEquals(res, sum);
+        assertEquals(2, (int)com.getOptimalConfiguration(null).get(y));
+    }
+
+    /**
+     * Test of the exact equality, of class IntegerCostFunction.
+     */
+    @Test
+    public void testEquals() {
+        CostFunction other = factory.buildCostFunction(fxy);
+        assertEquals(fxy, other);
+        other.setValue(1, 4);
+        assertFalse(((IntegerCostFunction)fxy).equals(other, 10));
+
+        factory.setRepresentation(Representation.DENSE);
+        CostFunction dense = factory.buildCostFunction(fxy);
+        dense.setValue(1, 3.00001);
+        assertTrue(((IntegerCostFunction)fxy).equals(dense, 0.0001));
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class IntensionalCostFunctionTest {
+
+    private CostFunctionFactory factory;
+
+    private Variable x, y, z;
+
+    private CostFunction intensional, materialized;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+
+        x = new Variable(new StringIdentity("x"), 2);
+        y = new Variable(new StringIdentity("y"), 3);
+        z = new Variable(new StringIdentity("z"), 4);
+        final Variable[] vars = new Variable[]{x, y, z};
+        final ValueOracle oracle = new ValueOracle() {
+            @Override
+            public double getValue(int[] index) {
+                return index[0] == index[1] ? Double.NEGATIVE_INFINITY
+                        : index[0] + 2*index[1] - index[2];
+            }
+        };
+        intensional = factory.buildCostFunction(vars, oracle);
+        materialized = factory.buildCostFunction(vars, 0);
+        materialized.setValues(intensional.getValues());
+    }
+
+    /**
+     * Test of the value computation, of class IntensionalCostFunction.
+     */
+    @Test
+    public void testGetValue() {
+        assertEquals(Double.NEGATIVE_INFINITY, intensional.getValue(new int[]{1, 1, 0}), 0);
+        assertEquals(2, intensional.getValue(new int[]{0, 2, 2}), 0);
+        assertEquals(intensional.getValue(new int[]{1, 2, 3}), intensional.getValue(23), 0);
+        assertEquals(materialized, intensional);
+    }
+
+    /**
+     * Test of combination and summarization, of class IntensionalCostFunction.
+     */
+    @Test
+    public void testOperations() {
+        CostFunction f = factory.buildCostFunction(new Variable[]{z}, 0);
+        f.setValues(new double[]{0, 1, 2, 3});
+        assertEquals(materialized.combine(f), intensional.combine(f));
+        assertEquals(f.combine(materialized), f.combine(intensional));
+
+        CostFunction sum = intensional.summarize(new Variable[]{z, x});
+        assertTrue(sum instanceof HypercubeCostFunction);
+        assertEquals(materialized.summarize(new Variable[]{z, x}), sum);
+    }
+
+    /**
+     * Test of the read-only restriction, of class IntensionalCostFunction.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetValue() {
+        intensional.setValue(0, 1);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class KBestSolverTest {
+
+    private CostFunctionFactory factory;
+
+    private Variable[] v;
+
+    private List<CostFunction> functions;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+
+        // A loop of pairwise functions v0-v1, v1-v2, ..., v5-v0
+        Random random = new Random(0);
+        v = new Variable[6];
+        for (int i=0; i<v.length; i++) {
+            v[i] = new Variable(new StringIdentity("v" + i), 3);
+        }
+        functions = new ArrayList<>();
+        for (int i=0; i<v.length; i++) {
+            CostFunction f = factory.buildCostFunction(new Variable[]{v[i], v[(i+1) % v.length]}, 0);
+            for (int j=0; j<f.getSize(); j++) {
+                f.setValue(j, random.nextInt(100));
+            }
+            functions.add(f);
+        }
+    }
+
+    /**
+     * Checks the solver against sorting the values of the combination.
+     */
+    private void check(int k) {
+        CostFunction combination = functions.get(0).combine(functions.subList(1, functions.size()));
+        double[] sorted = combination.getValues().clone();
+        Arrays.sort(sorted);
+
+        KBestSolver solver = new KBestSolver(factory, functions, k);
+        List<VariableAssignment> configurations = solver.getConfigurations();
+        double[] values = solver.getValues();
+        assertEquals(Math.min(k, sorted.length), configurations.size());
+
+        final boolean max = factory.getSummarizeOperation() == Summarize.MAX;
+        HashSet<Long> seen = new HashSet<>();
+        for (int i=0; i<values.length; i++) {
+            final double expected = max ? sorted[sorted.length - 1 - i] : sorted[i];
+            assertEquals(expected, values[i], 0);
+            final long idx = combination.getIndex(configurations.get(i));
+            assertEquals(values[i], combination.getValue(idx), 0);
+            assertTrue(seen.add(idx));
+        }
+    }
+
+    /**
+     * Test of the best configurations when maximizing, of class KBestSolver.
+     */
+    @Test
+    public void testMax() {
+        for (int k : new int[]{1, 2, 10, 1000}) {
+            check(k);
+        }
+    }
+
+    /**
+     * Test of the best configurations when minimizing, of class KBestSolver.
+     */
+    @Test
+    public void testMin() {
+        factory.setSummarizeOperation(Summarize.MIN);
+        for (int k : new int[]{1, 5, 50}) {
+            check(k);
+        }
+    }
+
+    /**
+     * Test that invalid configurations are never returned, of class
+     * KBestSolver.
+     */
+    @Test
+    public void testNoGoods() {
+        factory.setSummarizeOperation(Summarize.MIN);
+        CostFunction f = factory.buildCostFunction(new Variable[]{v[0]},
+                Double.POSITIVE_INFINITY);
+        f.setValue(1, 0);
+        functions.add(f);
+
+        KBestSolver solver = new KBestSolver(factory, functions, 1000);
+        assertEquals(243, solver.getConfigurations().size());
+        for (VariableAssignment configuration : solver.getConfigurations()) {
+            assertEquals(Integer.valueOf(1), configuration.get(v[0]));
+        }
+    }
+
+    /**
+     * Test of unsupported operations, of class KBestSolver.
+     */
+    @Test(expected=UnsupportedOperationException.class)
+    public void testSumSummarize() {
+        factory.setSummarizeOperation(Summarize.SUM);
+        new KBestSolver(factory, functions, 2);
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author marc
+ */
+public class MappedCostFunctionTest extends AbstractCostFunctionTest {
+
+    private File scratch;
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        try {
+            scratch = File.createTempFile("scratch", "");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        scratch.delete();
+        scratch.mkdir();
+
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setRepresentation(Representation.MAPPED);
+        f.setScratchDirectory(scratch);
+        return f;
+    }
+
+    @Override
+    public void tearDown() {
+        for (File f : scratch.listFiles()) {
+            f.delete();
+        }
+        scratch.delete();
+    }
+
+    /**
+     * Test of finalize method, of class MappedCostFunction.
+     */
+    @Test
+    public void testFinalize() throws Throwable {
+        MappedCostFunction f = (MappedCostFunction)factory.buildCostFunction(f1);
+        File file = f.getFile();
+        assertTrue(file.exists());
+        f.finalize();
+        assertFalse(file.exists());
+        assertNull(f.getFile());
+    }
+
+    /**
+     * Test of release method, of class MappedCostFunction.
+     */
+    @Test
+    public void testRelease() {
+        MappedCostFunction f = (MappedCostFunction)factory.buildCostFunction(f1);
+        assertEquals(f1, f);
+
+        File file = f.getFile();
+        assertEquals(scratch, file.getParentFile());
+        assertTrue(file.exists());
+        f.release();
+        assertFalse(file.exists());
+        assertNull(f.getFile());
+    }
+
+    /**
+     * Test that dense functions exceeding the spill threshold are mapped.
+     */
+    @Test
+    public void testSpillThreshold() {
+        factory.setRepresentation(Representation.DENSE);
+        factory.setSpillThreshold(8*12);
+        CostFunction f = factory.buildCostFunction(new Variable[]{a,b}, 0);
+        assertEquals(Representation.DENSE, factory.getRepresentation(f));
+
+        f = factory.buildCostFunction(f1);
+        assertEquals(Representation.DENSE, factory.getRepresentation(f));
+
+        f = f1.combine(fdc);
+        assertEquals(Representation.MAPPED, factory.getRepresentation(f));
+        f.release();
+    }
+
+}
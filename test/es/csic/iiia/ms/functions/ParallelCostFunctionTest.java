@@ -0,0 +1,90 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class ParallelCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setParallelThreshold(0);
+        return f;
+    }
+
+    /**
+     * Test of parallel operations against sequential ones, over functions
+     * large enough to be split into many tasks.
+     */
+    @Test
+    public void testLargeFunctions() {
+        Variable[] vars = new Variable[6];
+        for (int i=0; i<vars.length; i++) {
+            vars[i] = new Variable(new StringIdentity("x" + i), 7);
+        }
+        Random random = new Random(0);
+        CostFunction f = factory.buildCostFunction(new Variable[]{vars[0], vars[2], vars[4], vars[5]}, 0);
+        CostFunction g = factory.buildCostFunction(new Variable[]{vars[5], vars[1], vars[3]}, 0);
+        for (CostFunction h : new CostFunction[]{f, g}) {
+            for (int i=0; i<h.getSize(); i++) {
+                h.setValue(i, random.nextDouble());
+            }
+        }
+
+        CostFunction com = f.combine(g);
+        CostFunction sum1 = com.summarize(new Variable[]{vars[3], vars[0]});
+        CostFunction sum2 = com.summarize(new Variable[]{vars[0], vars[1]});
+
+        factory.setParallelThreshold(Long.MAX_VALUE);
+        CostFunction scom = f.combine(g);
+        assertEquals(scom, com);
+        assertEquals(scom.summarize(new Variable[]{vars[3], vars[0]}), sum1);
+        assertEquals(scom.summarize(new Variable[]{vars[0], vars[1]}), sum2);
+    }
+
+}
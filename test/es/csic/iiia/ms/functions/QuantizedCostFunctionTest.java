@@ -0,0 +1,171 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.VariableAssignment;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author marc
+ */
+public class QuantizedCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setRepresentation(Representation.QUANTIZED);
+        return f;
+    }
+
+    /**
+     * Test of setValue method, of class QuantizedCostFunction.
+     *
+     * Values are stored as fixed-point codes, so they can not be compared
+     * exactly.
+     */
+    @Test
+    @Override
+    public void testSetValue1() {
+        int[] sub = {1, 2, 0};
+        double value = 5.2d;
+        instance.setValue(sub, value);
+        assertEquals(value, instance.getValue(sub), 1e-3);
+    }
+
+    /**
+     * Test of setValue method, of class QuantizedCostFunction.
+     */
+    @Test
+    @Override
+    public void testSetValue2() {
+        int[] sub = {2, 2, 2};
+        double value = 5.2d;
+        instance.setValue(sub, value);
+        assertEquals(value, instance.getValue(sub), 1e-3);
+    }
+
+    /**
+     * Test of setValue method, of class QuantizedCostFunction.
+     */
+    @Test
+    @Override
+    public void testSetValue3() {
+        int[] sub = {1, 2, 0};
+        double value = 5.2d;
+        instance.setValue(sub, value);
+        assertEquals(value, instance.getValue(15), 1e-3);
+    }
+
+    /**
+     * Test of combineAndSummarize method, of class QuantizedCostFunction.
+     *
+     * Both paths quantize different intermediate values, so they can not be
+     * compared exactly.
+     */
+    @Test
+    @Override
+    public void testCombineAndSummarize() {
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        fs.add(fda);
+        fs.add(fdc);
+        for (Summarize operation : Summarize.values()) {
+            factory.setSummarizeOperation(operation);
+            for (Variable[] vars : new Variable[][]{{d}, {c,a}, {}, {a,b,c,d}}) {
+                CostFunction res = f1.combine(fs).summarize(vars);
+                CostFunction fused = f1.combineAndSummarize(fs, vars);
+                assertTrue(((QuantizedCostFunction)res).equals(fused, 1e-2));
+            }
+        }
+    }
+
+    /**
+     * Test of the nogood code and range widening, of class
+     * QuantizedCostFunction.
+     */
+    @Test
+    public void testNoGoodCode() {
+        factory.setQuantizationBits(8);
+        factory.setMode(Summarize.MIN, Combine.SUM, Normalize.NONE);
+        CostFunction f = factory.buildCostFunction(new Variable[]{a, b}, 0);
+        assertEquals(8, ((QuantizedCostFunction)f).getBits());
+
+        f.setValue(0, Double.POSITIVE_INFINITY);
+        f.setValue(1, 100);
+        f.setValue(2, -100);
+        assertEquals(Double.POSITIVE_INFINITY, f.getValue(0), 0);
+        assertEquals(100, f.getValue(1), 1);
+        assertEquals(-100, f.getValue(2), 1);
+        assertEquals(0, f.getValue(3), 1);
+        VariableAssignment best = f.getOptimalConfiguration(null);
+        assertEquals(1, (int)best.get(a));
+        assertEquals(0, (int)best.get(b));
+    }
+
+    /**
+     * Test of the code-space kernels against the double precision ones, of
+     * class QuantizedCostFunction.
+     */
+    @Test
+    public void testKernels() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        ArrayList<CostFunction> fs = new ArrayList<>();
+        fs.add(fda);
+        fs.add(fdc);
+        CostFunction com = f1.combine(fs);
+        CostFunction sum = com.summarize(new Variable[]{c,a});
+        assertTrue(com instanceof QuantizedCostFunction);
+        assertTrue(sum instanceof QuantizedCostFunction);
+
+        factory.setRepresentation(Representation.DENSE);
+        CostFunction df1 = factory.buildCostFunction(f1);
+        CostFunction dcom = df1.combine(fs);
+        CostFunction dsum = dcom.summarize(new Variable[]{c,a});
+        assertTrue(dsum instanceof HypercubeCostFunction);
+        assertArrayEquals(dcom.getValues(), com.getValues(), 1e-3);
+        assertArrayEquals(dsum.getValues(), sum.getValues(), 1e-3);
+    }
+
+}
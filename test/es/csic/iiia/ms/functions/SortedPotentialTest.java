@@ -0,0 +1,159 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol at iiia.csic.es>
+ */
+public class SortedPotentialTest {
+
+    private CostFunctionFactory factory;
+
+    private Random random;
+
+    private Variable[] v;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        random = new Random(0);
+        v = new Variable[]{
+            new Variable(new StringIdentity("a"), 3),
+            new Variable(new StringIdentity("b"), 4),
+            new Variable(new StringIdentity("c"), 5),
+        };
+    }
+
+    private CostFunction[] buildMessages() {
+        CostFunction[] messages = new CostFunction[v.length];
+        for (int i=0; i<v.length; i++) {
+            messages[i] = factory.buildCostFunction(new Variable[]{v[i]}, 0);
+            for (int x=0; x<v[i].getDomain(); x++) {
+                messages[i].setValue(x, random.nextDouble());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Checks the sorted marginals against combining and summarizing.
+     */
+    private void check(CostFunction potential, CostFunction[] messages) {
+        CostFunction[] marginals = new SortedPotential(potential).getMaxMarginals(messages);
+        for (int i=0; i<v.length; i++) {
+            List<CostFunction> others = new ArrayList<>();
+            for (int j=0; j<v.length; j++) {
+                if (j != i && messages[j] != null) {
+                    others.add(messages[j]);
+                }
+            }
+            CostFunction expected = potential.combine(others).summarize(new Variable[]{v[i]});
+            assertEquals(expected, marginals[i]);
+        }
+    }
+
+    /**
+     * Test of getMaxMarginals method, of class SortedPotential.
+     */
+    @Test
+    public void testGetMaxMarginals() {
+        for (Summarize operation : new Summarize[]{Summarize.MAX, Summarize.MIN}) {
+            factory.setSummarizeOperation(operation);
+            CostFunction potential = factory.buildCostFunction(v, 0);
+            for (int i=0; i<potential.getSize(); i++) {
+                potential.setValue(i, random.nextDouble() * 10);
+            }
+            check(potential, buildMessages());
+
+            CostFunction[] messages = buildMessages();
+            messages[1] = null;
+            messages[2].setValue(3, operation.getNoGood());
+            check(potential, messages);
+        }
+    }
+
+    /**
+     * Test of the pruning on a peaked potential, of class SortedPotential.
+     */
+    @Test
+    public void testPruning() {
+        CostFunction potential = factory.buildCostFunction(v, 0);
+        for (int i=0; i<potential.getSize(); i++) {
+            potential.setValue(i, Math.pow(random.nextDouble(), 4) * 100);
+        }
+        SortedPotential sorted = new SortedPotential(potential);
+        CostFunction[] messages = buildMessages();
+        sorted.getMaxMarginals(messages);
+        assertTrue(sorted.getVisitedEntries() < potential.getSize() * v.length / 2);
+        check(potential, messages);
+    }
+
+    /**
+     * Test that messages not unary over their variable are rejected.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testNonUnaryMessage() {
+        CostFunction[] messages = buildMessages();
+        messages[0] = factory.buildCostFunction(new Variable[]{v[0], v[1]}, 0);
+        new SortedPotential(factory.buildCostFunction(v, 0)).getMaxMarginals(messages);
+    }
+
+    /**
+     * Test of unsupported operations, of class SortedPotential.
+     */
+    @Test(expected=UnsupportedOperationException.class)
+    public void testSumSummarize() {
+        factory.setSummarizeOperation(Summarize.SUM);
+        new SortedPotential(factory.buildCostFunction(v, 0));
+    }
+
+}
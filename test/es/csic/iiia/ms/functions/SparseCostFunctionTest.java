@@ -0,0 +1,133 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package es.csic.iiia.ms.functions;
+
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author marc
+ */
+public class SparseCostFunctionTest extends AbstractCostFunctionTest {
+
+    @Override
+    public CostFunctionFactory buildFactory() {
+        CostFunctionFactory f = new CostFunctionFactory();
+        f.setRepresentation(Representation.SPARSE);
+        return f;
+    }
+
+    /**
+     * Test that nogoods are not stored, of class SparseCostFunction.
+     */
+    @Test
+    public void testStoredSize() {
+        factory.setSummarizeOperation(Summarize.MAX);
+        final double ng = Summarize.MAX.getNoGood();
+        SparseCostFunction f = (SparseCostFunction)
+                factory.buildCostFunction(new Variable[]{a,b,c}, ng);
+        assertEquals(0, f.getStoredSize());
+
+        f.setValue(3, 0.5);
+        f.setValue(7, 0.2);
+        assertEquals(2, f.getStoredSize());
+        f.setValue(3, ng);
+        assertEquals(1, f.getStoredSize());
+        assertEquals(ng, f.getValue(3), 0);
+        assertEquals(0.2, f.getValue(7), 0);
+    }
+
+    /**
+     * Test of summarize method after changing the summarize operation, of
+     * class SparseCostFunction.
+     */
+    @Test
+    public void testSummarizeAfterModeChange() {
+        factory.setSummarizeOperation(Summarize.MAX);
+        final double ng = Summarize.MAX.getNoGood();
+        CostFunction f = factory.buildCostFunction(new Variable[]{a,b}, ng);
+        f.setValue(new int[]{0,1}, 0.5);
+        f.setValue(new int[]{1,1}, 0.25);
+
+        // The stored defaults are not nogoods when minimizing
+        factory.setSummarizeOperation(Summarize.MIN);
+        CostFunction sum = f.summarize(new Variable[]{a});
+        assertEquals(ng, sum.getValue(0), 0);
+        assertEquals(ng, sum.getValue(1), 0);
+        sum = f.summarize(new Variable[]{b});
+        assertEquals(ng, sum.getValue(0), 0);
+        assertEquals(0.25, sum.getValue(1), 0);
+    }
+
+    /**
+     * Test of sparsely-driven combine method, of class SparseCostFunction.
+     */
+    @Test
+    public void testCombineSparse() {
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        final double ng = Summarize.MAX.getNoGood();
+
+        CostFunction fab = factory.buildCostFunction(new Variable[]{a,b}, ng);
+        fab.setValue(new int[]{0,1}, 0.5);
+        fab.setValue(new int[]{1,0}, 0.25);
+
+        CostFunction com = fab.combine(fdc);
+        CostFunction res = factory.buildCostFunction(new Variable[]{a,b,d,c}, ng);
+        res.setValue(new int[]{0,1,0,0}, 0.6);
+        res.setValue(new int[]{0,1,0,1}, 0.65);
+        res.setValue(new int[]{0,1,0,2}, 0.75);
+        res.setValue(new int[]{0,1,1,0}, 0.65);
+        res.setValue(new int[]{0,1,1,1}, 0.8);
+        res.setValue(new int[]{0,1,1,2}, 0.65);
+        res.setValue(new int[]{1,0,0,0}, 0.35);
+        res.setValue(new int[]{1,0,0,1}, 0.4);
+        res.setValue(new int[]{1,0,0,2}, 0.5);
+        res.setValue(new int[]{1,0,1,0}, 0.4);
+        res.setValue(new int[]{1,0,1,1}, 0.55);
+        res.setValue(new int[]{1,0,1,2}, 0.4);
+        assertEquals(res, com);
+        assertEquals(12, ((SparseCostFunction)com).getStoredSize());
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.node;
+
+import es.csic.iiia.ms.Communicator;
+import es.csic.iiia.ms.Identity;
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.functions.CardinalityCostFunction;
+import es.csic.iiia.ms.functions.CostFunction;
+import es.csic.iiia.ms.functions.CostFunctionFactory;
+import es.csic.iiia.ms.op.Combine;
+import es.csic.iiia.ms.op.Normalize;
+import es.csic.iiia.ms.op.Summarize;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol@iiia.csic.es>
+ */
+public class CardinalityFunctionNodeTest {
+
+    private CostFunctionFactory factory;
+
+    private Variable[] vars;
+
+    private Identity[] neighbors;
+
+    private Map<Identity, CostFunction> sent;
+
+    private CardinalityFunctionNode instance;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        factory.setMode(Summarize.MAX, Combine.SUM, Normalize.NONE);
+        vars = new Variable[3];
+        neighbors = new Identity[vars.length];
+        for (int i=0; i<vars.length; i++) {
+            vars[i] = new Variable(new StringIdentity("x" + i), 2);
+            neighbors[i] = new StringIdentity("n" + i);
+        }
+        sent = new HashMap<>();
+
+        CardinalityCostFunction potential = factory.buildCardinalityCostFunction(vars,
+                new double[]{0, 3, 1, 7});
+        instance = new CardinalityFunctionNode(new StringIdentity("f"), new Communicator() {
+            @Override
+            public void send(CostFunction message, Identity from, Identity to) {
+                sent.put(to, message);
+            }
+        }, potential);
+        for (int i=0; i<vars.length; i++) {
+            instance.addNeighbor(neighbors[i], vars[i]);
+        }
+    }
+
+    /**
+     * Test of run method, of class CardinalityFunctionNode, when the
+     * neighbors send messages over the whole scope of the potential.
+     */
+    @Test
+    public void testRunFullScopeMessages() {
+        CostFunction[] unary = new CostFunction[vars.length];
+        for (int i=0; i<vars.length; i++) {
+            CostFunction message = factory.buildCostFunction(vars, 0);
+            for (long j=0; j<message.getSize(); j++) {
+                message.setValue(j, (i + 1) * j % 5);
+            }
+            unary[i] = message.summarize(new Variable[]{vars[i]});
+            instance.receive(message, neighbors[i]);
+        }
+        instance.run();
+
+        CostFunction[] expected = ((CardinalityCostFunction)instance.getPotential())
+                .getMaxMarginals(unary);
+        for (int i=0; i<vars.length; i++) {
+            assertEquals(expected[i], sent.get(neighbors[i]));
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ * Copyright (c) 2014, IIIA-CSIC, Artificial Intelligence Research Institute
+ * All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   Redistributions of source code must retain the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the
+ *   following disclaimer in the documentation and/or other
+ *   materials provided with the distribution.
+ *
+ *   Neither the name of IIIA-CSIC, Artificial Intelligence Research Institute
+ *   nor the names of its contributors may be used to
+ *   endorse or promote products derived from this
+ *   software without specific prior written permission of
+ *   IIIA-CSIC, Artificial Intelligence Research Institute
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package es.csic.iiia.ms.node;
+
+import es.csic.iiia.ms.Communicator;
+import es.csic.iiia.ms.Identity;
+import es.csic.iiia.ms.StringIdentity;
+import es.csic.iiia.ms.Variable;
+import es.csic.iiia.ms.functions.CostFunction;
+import es.csic.iiia.ms.functions.CostFunctionFactory;
+import es.csic.iiia.ms.functions.MappedCostFunction;
+import es.csic.iiia.ms.functions.Representation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Marc Pujol <mpujol@iiia.csic.es>
+ */
+public class VariableNodeTest {
+
+    private CostFunctionFactory factory;
+
+    private Variable x, y;
+
+    private Identity node, neighbor;
+
+    private List<CostFunction> sent;
+
+    private VariableNode instance;
+
+    @Before
+    public void setUp() {
+        factory = new CostFunctionFactory();
+        x = new Variable(new StringIdentity("x"), 2);
+        y = new Variable(new StringIdentity("y"), 3);
+        node = new StringIdentity("n");
+        neighbor = new StringIdentity("f");
+        sent = new ArrayList<>();
+
+        CostFunction potential = factory.buildCostFunction(new Variable[]{x}, 0);
+        potential.setValues(new double[]{0, 5});
+        instance = new VariableNode(node, new Communicator() {
+            @Override
+            public void send(CostFunction message, Identity from, Identity to) {
+                sent.add(message);
+            }
+        }, potential);
+        instance.addNeighbor(neighbor, x);
+    }
+
+    /**
+     * Test of run method, of class VariableNode.
+     */
+    @Test
+    public void testRun() {
+        CostFunction message = factory.buildCostFunction(new Variable[]{y, x}, 0);
+        message.setValues(new double[]{1, 2, 10, 3, 4, 4});
+        instance.receive(message, neighbor);
+        instance.run();
+
+        // The message is the full belief without the neighbor's contribution
+        assertEquals(1, sent.size());
+        CostFunction msg = sent.get(0);
+        assertEquals(new HashSet<>(Arrays.asList(x, y)), msg.getVariableSet());
+        assertEquals(instance.getPotential().getValue(0), msg.getValue(msg.getIndex(
+                instance.getBelief().getMapping(0, null))), 0);
+
+        // The best belief configuration is y=1, x=0
+        assertEquals(0, instance.select());
+        assertArrayEquals(new int[]{0},
+                VariableNode.select(Arrays.asList(instance), null));
+    }
+
+    /**
+     * Test that replaced messages and beliefs are released.
+     */
+    @Test
+    public void testRelease() {
+        CostFunctionFactory mapped = new CostFunctionFactory();
+        mapped.setRepresentation(Representation.MAPPED);
+        CostFunction potential = mapped.buildCostFunction(new Variable[]{x}, 0);
+        VariableNode n = new VariableNode(node, new Communicator() {
+            @Override
+            public void send(CostFunction message, Identity from, Identity to) {
+                message.release();
+            }
+        }, potential);
+        n.addNeighbor(neighbor, x);
+
+        MappedCostFunction first = (MappedCostFunction)mapped.buildCostFunction(new Variable[]{x}, 1);
+        n.receive(first, neighbor);
+        n.receive(mapped.buildCostFunction(new Variable[]{x}, 2), neighbor);
+        assertNull(first.getFile());
+
+        n.run();
+        MappedCostFunction belief = (MappedCostFunction)n.getBelief();
+        n.run();
+        assertNull(belief.getFile());
+        assertNotNull(((MappedCostFunction)n.getBelief()).getFile());
+        n.getBelief().release();
+    }
+
+}